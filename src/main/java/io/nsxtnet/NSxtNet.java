@@ -1,22 +1,41 @@
 package io.nsxtnet;
 
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.internal.PlatformDependent;
+import io.netty.util.internal.SystemPropertyUtil;
 
 import io.nsxtnet.config.ServerSettings;
 import io.nsxtnet.config.SocketSettings;
+import io.nsxtnet.config.ObjectRecycling;
+import io.nsxtnet.config.Transport;
 import io.nsxtnet.domain.metadata.ServerMetadata;
 import io.nsxtnet.exception.DefaultExceptionMapper;
 import io.nsxtnet.exception.ExceptionMapping;
 import io.nsxtnet.exception.ServiceException;
 import io.nsxtnet.pipeline.*;
+import io.nsxtnet.response.DefaultHttpResponseWriter;
+import io.nsxtnet.response.OpenFileCache;
+import io.nsxtnet.response.ResponseCompressor;
 import io.nsxtnet.route.RouteBuilder;
 import io.nsxtnet.route.RouteDeclaration;
 import io.nsxtnet.config.RouteDefaults;
+import io.nsxtnet.route.RouteResolutionCache;
 import io.nsxtnet.route.RouteResolver;
 import io.nsxtnet.route.ParameterizedRouteBuilder;
 import io.nsxtnet.serialization.DefaultSerializationProvider;
@@ -27,16 +46,37 @@ import io.nsxtnet.util.DefaultShutdownHook;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Created by kosh on 2014-12-09.
  */
 public class NSxtNet {
 
+    private static final Logger log = LoggerFactory.getLogger(NSxtNet.class);
+
     public static final String DEFAULT_NAME = "NSxtNet";
     public static final int DEFAULT_PORT = 10080;
 
+    private static final int DEFAULT_WRITE_BUFFER_HIGH_WATER_MARK = 64 * 1024;
+
+    // Netty's PooledByteBufAllocator defaults.
+    private static final int DEFAULT_BUFFER_PAGE_SIZE = 8192;
+    private static final int DEFAULT_BUFFER_MAX_ORDER = 11;
+    private static final int DEFAULT_BUFFER_TINY_CACHE_SIZE = 512;
+    private static final int DEFAULT_BUFFER_SMALL_CACHE_SIZE = 256;
+    private static final int DEFAULT_BUFFER_NORMAL_CACHE_SIZE = 64;
+
     private static SerializationProvider SERIALIZATION_PROVIDER = null;
 
     private ServerBootstrap bootstrap;
@@ -44,8 +84,20 @@ public class NSxtNet {
     private ServerSettings serverSettings = new ServerSettings();
     private RouteDefaults routeDefaults = new RouteDefaults();
     private Channel channel;
+    private List<Channel> channels = Collections.emptyList();
+    private Map<ChannelOption<?>, Object> parentOptions = new LinkedHashMap<ChannelOption<?>, Object>();
+    private Map<ChannelOption<?>, Object> childOptions = new LinkedHashMap<ChannelOption<?>, Object>();
+    private AcceptorStatistics acceptorStatistics;
+    private DecompressionStatistics decompressionStatistics = new DecompressionStatistics();
+    private WritabilityStatistics writabilityStatistics = new WritabilityStatistics();
+    private FlushStatistics flushStatistics = new FlushStatistics();
+    private OpenFileCache openFileCache;
     private EventLoopGroup bossGroup;
     private EventLoopGroup workerGroup;
+    private Transport boundTransport;
+    private ByteBufAllocator allocator;
+    private ThreadPoolExecutor executor;
+    private RouteResolver routeResolver;
 
 
     private List<MessageObserver> messageObservers = new ArrayList<MessageObserver>();
@@ -234,9 +286,9 @@ public class NSxtNet {
      */
     public NSxtNet addFinallyProcessor(Postprocessor processor)
     {
-        if (!postprocessors.contains(processor))
+        if (!finallyProcessors.contains(processor))
         {
-            postprocessors.add(processor);
+            finallyProcessors.add(processor);
         }
 
         return this;
@@ -313,6 +365,114 @@ public class NSxtNet {
         return this;
     }
 
+    public int getBacklog()
+    {
+        return socketSettings.getBacklog();
+    }
+
+    /**
+     * Set the number of pending connections the listening socket queues
+     * before the kernel refuses new ones.
+     *
+     * @param backlog the accept queue length. Zero (0) uses the OS default.
+     * @return the RestExpress instance.
+     */
+    public NSxtNet setBacklog(int backlog)
+    {
+        socketSettings.setBacklog(backlog);
+        return this;
+    }
+
+    public int getSendBufferSize()
+    {
+        return socketSettings.getSendBufferSize();
+    }
+
+    public NSxtNet setSendBufferSize(int sendBufferSize)
+    {
+        socketSettings.setSendBufferSize(sendBufferSize);
+        return this;
+    }
+
+    /**
+     * Set the write buffer water marks of each connection. Once more than
+     * 'high' bytes are queued for a connection it becomes unwritable, until
+     * the queue drains below 'low'.
+     *
+     * @param low the low water mark, in bytes.
+     * @param high the high water mark, in bytes.
+     * @return the RestExpress instance.
+     */
+    public NSxtNet setWriteBufferWaterMarks(int low, int high)
+    {
+        socketSettings.setWriteBufferWaterMarks(low, high);
+        return this;
+    }
+
+    public int getMaxMessagesPerRead()
+    {
+        return socketSettings.getMaxMessagesPerRead();
+    }
+
+    /**
+     * Set the number of reads (or accepts, for the listening socket) an I/O
+     * thread performs on a channel before moving on to the next one.
+     *
+     * @param maxMessagesPerRead the number of reads. Zero (0) uses the Netty default.
+     * @return the RestExpress instance.
+     */
+    public NSxtNet setMaxMessagesPerRead(int maxMessagesPerRead)
+    {
+        socketSettings.setMaxMessagesPerRead(maxMessagesPerRead);
+        return this;
+    }
+
+    public ByteBufAllocator getAllocator()
+    {
+        return socketSettings.getAllocator();
+    }
+
+    /**
+     * Set the allocator of request and response buffers, instead of the pooled
+     * allocator configured by the ServerSettings.
+     *
+     * @param allocator a ByteBufAllocator, or null for the default.
+     * @return the RestExpress instance.
+     */
+    public NSxtNet setAllocator(ByteBufAllocator allocator)
+    {
+        socketSettings.setAllocator(allocator);
+        return this;
+    }
+
+    /**
+     * Returns the server settings, e.g. to size the buffer pool before bind().
+     *
+     * @return the ServerSettings.
+     */
+    public ServerSettings getServerSettings()
+    {
+        return serverSettings;
+    }
+
+    public SocketSettings getSocketSettings()
+    {
+        return socketSettings;
+    }
+
+    /**
+     * Replace all socket settings at once, e.g. with one of the presets
+     * SocketSettings.lowLatencyApi() or SocketSettings.bulkTransfer().
+     *
+     * @param settings the socket settings.
+     * @return the RestExpress instance.
+     */
+    public NSxtNet setSocketSettings(SocketSettings settings)
+    {
+        this.socketSettings = settings;
+        return this;
+    }
+
     /**
      *
      * @param elementName
@@ -384,7 +544,8 @@ public class NSxtNet {
      *
      * For VERY short-running requests, a value of zero will cause no
      * background threads to be created, causing all processing to occur in
-     * the NIO (front-end) worker thread.
+     * the NIO (front-end) worker thread. Individual routes may also opt out
+     * of the executor via RouteBuilder.executeInIoThread().
      *
      * @param value the number of executor threads to create.
      * @return the RestExpress instance.
@@ -395,9 +556,90 @@ public class NSxtNet {
         return this;
     }
 
+    public int getExecutorQueueSize()
+    {
+        return serverSettings.getExecutorQueueSize();
+    }
+
+    /**
+     * Set the number of requests that may wait for a background (executor)
+     * thread. Requests arriving while the queue is full are answered with
+     * 503 Service Unavailable instead of piling up.
+     *
+     * @param size the maximum number of queued requests.
+     * @return the RestExpress instance.
+     */
+    public NSxtNet setExecutorQueueSize(int size)
+    {
+        serverSettings.setExecutorQueueSize(size);
+        return this;
+    }
+
+    public int getMaxPipelineDepth()
+    {
+        return serverSettings.getMaxPipelineDepth();
+    }
+
+    /**
+     * Set the number of pipelined requests that may be in flight on a
+     * connection. Their responses are written in request order, however the
+     * processing of each completes. At this depth, no further requests are
+     * read from the connection until the oldest is answered. Defaults to 32.
+     *
+     * @param depth the maximum pipeline depth. Zero (0) for no limit.
+     * @return the RestExpress instance.
+     */
+    public NSxtNet setMaxPipelineDepth(int depth)
+    {
+        serverSettings.setMaxPipelineDepth(depth);
+        return this;
+    }
+
+    public int getMaxConsolidatedFlushes()
+    {
+        return serverSettings.getMaxConsolidatedFlushes();
+    }
+
+    /**
+     * Set the number of flushes a connection combines into one. Responses
+     * completed within the same turn of its event loop (e.g. by executor
+     * threads) are then written with a single syscall. A flush is never held
+     * past that turn, or once this many are held. Defaults to 256.
+     *
+     * @param count the number of flushes combined at most. One (1) flushes
+     * each response on its own.
+     * @return the RestExpress instance.
+     */
+    public NSxtNet setMaxConsolidatedFlushes(int count)
+    {
+        serverSettings.setMaxConsolidatedFlushes(count);
+        return this;
+    }
+
+    public ObjectRecycling getObjectRecycling()
+    {
+        return serverSettings.getObjectRecycling();
+    }
+
+    /**
+     * Set whether each request's Request, Response and MessageContext are
+     * recycled, per I/O thread, once the request is complete. With POOLED,
+     * controllers, processors and observers must not hold on to them past
+     * the request's completion; DEBUG finds those that do. Defaults to NONE.
+     *
+     * @param recycling the ObjectRecycling mode.
+     * @return the RestExpress instance.
+     */
+    public NSxtNet setObjectRecycling(ObjectRecycling recycling)
+    {
+        serverSettings.setObjectRecycling(recycling);
+        return this;
+    }
+
     /**
      * Set the maximum length of the content in a request. If the length of the content exceeds this value,
-     * the server closes the connection immediately without sending a response.
+     * the server answers with 413 Request Entity Too Large. Compressed (gzip or deflate) content is held to
+     * this limit once inflated, not by its size on the wire.
      *
      * @param size the maximum size in bytes.
      * @return the RestExpress instance.
@@ -408,6 +650,232 @@ public class NSxtNet {
         return this;
     }
 
+    public int getRouteCacheSize()
+    {
+        return serverSettings.getRouteCacheSize();
+    }
+
+    /**
+     * Set the number of resolved routes each I/O thread caches, by HTTP method and
+     * raw path. Useful when a small set of URLs gets most of the traffic. Routes whose
+     * paths are rarely repeated are bypassed automatically.
+     *
+     * The default (if this value is not set, or set to zero) is no cache.
+     *
+     * @param size the maximum number of cached routes per I/O thread.
+     * @return the RestExpress instance.
+     */
+    public NSxtNet setRouteCacheSize(int size)
+    {
+        serverSettings.setRouteCacheSize(size);
+        return this;
+    }
+
+    /**
+     * Returns the route resolution cache, for its hit/miss counts. Null
+     * before bind() or if the cache is disabled.
+     *
+     * @return the RouteResolutionCache, or null.
+     */
+    public RouteResolutionCache getRouteCache()
+    {
+        return (routeResolver == null ? null : routeResolver.getCache());
+    }
+
+    public Transport getTransport()
+    {
+        return serverSettings.getTransport();
+    }
+
+    /**
+     * Set the transport of the acceptor and I/O threads. NIO (the default) works
+     * everywhere. EPOLL uses Netty's native transport on Linux, which makes fewer
+     * system calls and produces less garbage. AUTO uses EPOLL where available.
+     *
+     * If the native library can't be loaded, EPOLL and AUTO fall back to NIO.
+     *
+     * @param transport the transport to use.
+     * @return the RestExpress instance.
+     */
+    public NSxtNet setTransport(Transport transport)
+    {
+        serverSettings.setTransport(transport);
+        return this;
+    }
+
+    /**
+     * Returns the transport the server actually bound with, after any fallback
+     * to NIO. Null before bind().
+     *
+     * @return the effective Transport, or null.
+     */
+    public Transport getBoundTransport()
+    {
+        return boundTransport;
+    }
+
+    public int getAcceptorCount()
+    {
+        return serverSettings.getAcceptorCount();
+    }
+
+    /**
+     * Set the number of listening sockets to bind to the port. With more than one,
+     * each socket is opened with SO_REUSEPORT on its own acceptor thread, and the
+     * kernel spreads incoming connections across them. Useful when a single
+     * accept loop can't keep up with bursts of new connections.
+     *
+     * Only honored by the EPOLL transport. Otherwise a single socket is bound.
+     *
+     * @param count the number of listening sockets.
+     * @return the RestExpress instance.
+     */
+    public NSxtNet setAcceptorCount(int count)
+    {
+        serverSettings.setAcceptorCount(count);
+        return this;
+    }
+
+    public boolean useCompression()
+    {
+        return serverSettings.useCompression();
+    }
+
+    /**
+     * Turn off response compression altogether. By default, response bodies
+     * are compressed with gzip or deflate, if the client accepts either, unless
+     * they are smaller than the compression threshold or of a media type that
+     * is compressed already (images, archives, ...). Routes opt out with
+     * RouteBuilder.noCompression().
+     *
+     * @return the RestExpress instance.
+     */
+    public NSxtNet noCompression()
+    {
+        serverSettings.setUseCompression(false);
+        return this;
+    }
+
+    public int getCompressionThreshold()
+    {
+        return serverSettings.getCompressionThreshold();
+    }
+
+    /**
+     * Set the smallest response body, in bytes, that is compressed. Smaller
+     * bodies gain little and cost CPU. Defaults to 1024.
+     *
+     * @param bytes the threshold.
+     * @return the RestExpress instance.
+     */
+    public NSxtNet setCompressionThreshold(int bytes)
+    {
+        serverSettings.setCompressionThreshold(bytes);
+        return this;
+    }
+
+    public int getCompressionLevel()
+    {
+        return serverSettings.getCompressionLevel();
+    }
+
+    /**
+     * Set the deflate level, from 1 (fastest) to 9 (smallest). Defaults to 6.
+     *
+     * @param level the compression level.
+     * @return the RestExpress instance.
+     */
+    public NSxtNet setCompressionLevel(int level)
+    {
+        serverSettings.setCompressionLevel(level);
+        return this;
+    }
+
+    /**
+     * Never compress responses of the given media types, in addition to the
+     * defaults (see ResponseCompressor.DEFAULT_UNCOMPRESSED_MEDIA_TYPES). A
+     * trailing '*' matches any subtype, e.g. "image/*".
+     *
+     * @param mediaTypes the media types.
+     * @return the RestExpress instance.
+     */
+    public NSxtNet addUncompressedMediaType(String... mediaTypes)
+    {
+        Collections.addAll(serverSettings.getUncompressedMediaTypes(), mediaTypes);
+        return this;
+    }
+
+    public int getMaxOpenFiles()
+    {
+        return serverSettings.getMaxOpenFiles();
+    }
+
+    /**
+     * Set the number of files kept open for responses whose body is a file
+     * (a java.nio.file.Path or java.io.File), so that sending one again
+     * doesn't reopen it. Zero (0) opens the file for each response. Defaults
+     * to 256.
+     *
+     * @param count the number of open files.
+     * @return the RestExpress instance.
+     */
+    public NSxtNet setMaxOpenFiles(int count)
+    {
+        serverSettings.setMaxOpenFiles(count);
+        return this;
+    }
+
+    /**
+     * Returns the connection counts of the listening sockets. Null before bind().
+     *
+     * @return the AcceptorStatistics, or null.
+     */
+    public AcceptorStatistics getAcceptorStatistics()
+    {
+        return acceptorStatistics;
+    }
+
+    /**
+     * Returns the wire and inflated byte counts of compressed request bodies,
+     * and the number of requests rejected for exceeding the maximum content size.
+     *
+     * @return the DecompressionStatistics.
+     */
+    public DecompressionStatistics getDecompressionStatistics()
+    {
+        return decompressionStatistics;
+    }
+
+    /**
+     * Returns the number of connections blocked on writability (a client slow
+     * to take its responses) and the bytes queued for them.
+     *
+     * @return the WritabilityStatistics.
+     */
+    public WritabilityStatistics getWritabilityStatistics()
+    {
+        return writabilityStatistics;
+    }
+
+    /**
+     * Returns the flushes asked for and those passed on to the sockets once
+     * combined. Each of the latter costs a write syscall.
+     *
+     * @return the FlushStatistics.
+     */
+    public FlushStatistics getFlushStatistics()
+    {
+        return flushStatistics;
+    }
+
+    /**
+     * @return the listening channels, one per acceptor. Empty before bind().
+     */
+    public List<Channel> getChannels()
+    {
+        return channels;
+    }
+
     /**
      * Can be called after routes are defined to augment or get data from
      * all the currently-defined routes.
@@ -434,36 +902,34 @@ public class NSxtNet {
     {
         setPort(port);
 
-        // Configure the server.
-        if (getIoThreadCount() > 0)
-        {
-            bossGroup = new NioEventLoopGroup(getIoThreadCount());
-        }
-        else
-        {
-            bossGroup = new NioEventLoopGroup();
-        }
-
-        if (getExecutorThreadCount() > 0)
-        {
-            workerGroup = new NioEventLoopGroup(getExecutorThreadCount());
-        }
-        else
-        {
-            workerGroup = new NioEventLoopGroup();
-        }
+        // Configure the server. A single thread accepts connections, the I/O threads serve them.
+        // With SO_REUSEPORT, each listening socket gets its own accepting thread.
+        boundTransport = resolveTransport();
+        int acceptorCount = (boundTransport == Transport.EPOLL ? Math.max(1, getAcceptorCount()) : 1);
+        bossGroup = createEventLoopGroup(acceptorCount);
+        workerGroup = createEventLoopGroup(getIoThreadCount());
+        acceptorStatistics = new AcceptorStatistics();
+        allocator = createAllocator();
 
         bootstrap = new ServerBootstrap()
                 .group(bossGroup, workerGroup)
-                .channel(NioServerSocketChannel.class);
+                .channel(getServerChannelClass())
+                .handler(acceptorStatistics);
 
         // Set up the event pipeline factory.
-        DefaultRequestHandler requestHandler = new DefaultRequestHandler(createRouteResolver(), SERIALIZATION_PROVIDER);
+        routeResolver = createRouteResolver();
+        DefaultRequestHandler requestHandler = new DefaultRequestHandler(routeResolver, SERIALIZATION_PROVIDER);
 
         // Add MessageObservers to the request handler here, if desired...
         //requestHandler.addMessageObserver(messageObservers.toArray(new MessageObserver[0]));
         requestHandler.addMessageObserver( new SimpleConsoleLogMessageObserver() );
         requestHandler.setExceptionMap(exceptionMap);
+        requestHandler.setExecutor(createExecutor());
+        requestHandler.setWritabilityStatistics(writabilityStatistics);
+        requestHandler.setMaxPipelineDepth(serverSettings.getMaxPipelineDepth());
+        requestHandler.setObjectRecycling(serverSettings.getObjectRecycling());
+        openFileCache = new OpenFileCache(serverSettings.getMaxOpenFiles());
+        requestHandler.setResponseWriter(new DefaultHttpResponseWriter(createCompressor(), openFileCache));
 
         // Add pre/post processors to the request handler here...
         addPreprocessors(requestHandler);
@@ -472,24 +938,227 @@ public class NSxtNet {
 
         PipelineInitializer pf = new PipelineInitializer()
                 .setRequestHandler(requestHandler)
-                .setMaxContentLength(serverSettings.getMaxContentSize());
+                .setMaxContentLength(serverSettings.getMaxContentSize())
+                .setDecompressionStatistics(decompressionStatistics)
+                .setRouteResolver(routeResolver)
+                .setMaxConsolidatedFlushes(serverSettings.getMaxConsolidatedFlushes())
+                .setFlushStatistics(flushStatistics);
 
         bootstrap.childHandler(pf);
         setBootstrapOptions();
 
-        // Bind and start to accept incoming connections.
-        channel = bootstrap.bind(new InetSocketAddress(port)).channel();
+        if (acceptorCount > 1)
+        {
+            setParentOption(EpollChannelOption.SO_REUSEPORT, true);
+        }
+
+        // Bind and start to accept incoming connections. The boss group hands each
+        // bind to its next event loop, so every socket has a thread of its own.
+        List<Channel> bound = new ArrayList<Channel>(acceptorCount);
+        ChannelFutureListener bindListener = new BindListener(port, acceptorCount);
+
+        for (int i = 0; i < acceptorCount; i++)
+        {
+            ChannelFuture bindFuture = bootstrap.bind(new InetSocketAddress(port));
+            bindFuture.addListener(bindListener);
+            bound.add(bindFuture.channel());
+        }
+
+        channels = Collections.unmodifiableList(bound);
+        channel = channels.get(0);
+
         return channel;
     }
 
+    /**
+     * @return the configured transport, or NIO if it requires the native epoll library and that isn't available.
+     */
+    private Transport resolveTransport()
+    {
+        Transport transport = getTransport();
+
+        if (transport == null || transport == Transport.NIO) return Transport.NIO;
+
+        // The native transport also needs the memory addresses of direct buffers, which
+        // Netty can only get at through sun.misc.Unsafe.
+        if (Epoll.isAvailable() && PlatformDependent.hasUnsafe()) return Transport.EPOLL;
+
+        if (transport == Transport.EPOLL)
+        {
+            log.warn("Native epoll transport unavailable, falling back to NIO",
+                (Epoll.isAvailable() ? new UnsupportedOperationException("sun.misc.Unsafe unavailable") : Epoll.unavailabilityCause()));
+        }
+
+        return Transport.NIO;
+    }
+
+    /**
+     * @param threadCount the number of threads. Zero (0) uses the Netty default.
+     * @return an EventLoopGroup of the bound transport.
+     */
+    private EventLoopGroup createEventLoopGroup(int threadCount)
+    {
+        if (boundTransport == Transport.EPOLL)
+        {
+            return (threadCount > 0 ? new EpollEventLoopGroup(threadCount) : new EpollEventLoopGroup());
+        }
+
+        return (threadCount > 0 ? new NioEventLoopGroup(threadCount) : new NioEventLoopGroup());
+    }
+
+    /**
+     * @return the allocator named in the socket settings, if any. Otherwise a pooled
+     * (unless disabled) allocator sized per the server settings.
+     */
+    private ByteBufAllocator createAllocator()
+    {
+        if (socketSettings.getAllocator() != null) return socketSettings.getAllocator();
+
+        boolean isDirect = serverSettings.useDirectBuffers();
+
+        if (!serverSettings.useBufferPooling()) return new UnpooledByteBufAllocator(isDirect);
+
+        int pageSize = orDefault(serverSettings.getBufferPageSize(), DEFAULT_BUFFER_PAGE_SIZE);
+        int maxOrder = orDefault(serverSettings.getBufferMaxOrder(), DEFAULT_BUFFER_MAX_ORDER);
+        int chunkSize = pageSize << maxOrder;
+        int heapArenas = orDefault(serverSettings.getBufferArenaCount(),
+            defaultArenaCount("io.netty.allocator.numHeapArenas", Runtime.getRuntime().maxMemory(), chunkSize));
+        int directArenas = orDefault(serverSettings.getBufferArenaCount(),
+            defaultArenaCount("io.netty.allocator.numDirectArenas", PlatformDependent.maxDirectMemory(), chunkSize));
+
+        return new PooledByteBufAllocator(isDirect, heapArenas, directArenas, pageSize, maxOrder,
+            orDefault(serverSettings.getBufferTinyCacheSize(), DEFAULT_BUFFER_TINY_CACHE_SIZE),
+            orDefault(serverSettings.getBufferSmallCacheSize(), DEFAULT_BUFFER_SMALL_CACHE_SIZE),
+            orDefault(serverSettings.getBufferNormalCacheSize(), DEFAULT_BUFFER_NORMAL_CACHE_SIZE));
+    }
+
+    /**
+     * As Netty's PooledByteBufAllocator.DEFAULT does: the count given by the system property,
+     * if set, otherwise one arena per core, but no more than would let a chunk per arena
+     * take up a sixth of the memory available. Unlike Netty, the chunk size is the one
+     * configured here.
+     */
+    private static int defaultArenaCount(String property, long maxMemory, int chunkSize)
+    {
+        int count = (int) Math.min(Runtime.getRuntime().availableProcessors(), maxMemory / chunkSize / 2 / 3);
+        return Math.max(0, SystemPropertyUtil.getInt(property, count));
+    }
+
+    private static int orDefault(int value, int defaultValue)
+    {
+        return (value < 0 ? defaultValue : value);
+    }
+
+    private Class<? extends ServerChannel> getServerChannelClass()
+    {
+        return (boundTransport == Transport.EPOLL ? EpollServerSocketChannel.class : NioServerSocketChannel.class);
+    }
+
+    /**
+     * @return a fixed-size pool with a bounded queue, or null if the executor thread count is zero.
+     */
+    private ThreadPoolExecutor createExecutor()
+    {
+        if (getExecutorThreadCount() <= 0) return null;
+
+        executor = new ThreadPoolExecutor(getExecutorThreadCount(), getExecutorThreadCount(), 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<Runnable>(Math.max(1, getExecutorQueueSize())),
+            new DefaultThreadFactory(getName() + "-executor"));
+        return executor;
+    }
+
     private void setBootstrapOptions()
     {
-        bootstrap.option(ChannelOption.TCP_NODELAY, useTcpNoDelay());
-        bootstrap.option(ChannelOption.SO_KEEPALIVE, serverSettings.isKeepAlive());
-        bootstrap.option(ChannelOption.SO_REUSEADDR, shouldReuseAddress());
-        bootstrap.option(ChannelOption.SO_LINGER, getSoLinger());
-        bootstrap.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, getConnectTimeoutMillis());
-        bootstrap.option(ChannelOption.SO_RCVBUF, getReceiveBufferSize());
+        // The listening socket.
+        setParentOption(ChannelOption.SO_REUSEADDR, shouldReuseAddress());
+        setParentOption(ChannelOption.SO_RCVBUF, positiveOrNull(getReceiveBufferSize()));
+        setParentOption(ChannelOption.SO_BACKLOG, positiveOrNull(socketSettings.getBacklog()));
+        setParentOption(ChannelOption.MAX_MESSAGES_PER_READ, positiveOrNull(socketSettings.getMaxMessagesPerRead()));
+        setParentOption(ChannelOption.ALLOCATOR, allocator);
+
+        // The accepted connections.
+        setChildOption(ChannelOption.TCP_NODELAY, useTcpNoDelay());
+        setChildOption(ChannelOption.SO_KEEPALIVE, serverSettings.isKeepAlive());
+        setChildOption(ChannelOption.SO_LINGER, getSoLinger());
+        setChildOption(ChannelOption.CONNECT_TIMEOUT_MILLIS, getConnectTimeoutMillis());
+        setChildOption(ChannelOption.SO_RCVBUF, positiveOrNull(getReceiveBufferSize()));
+        setChildOption(ChannelOption.SO_SNDBUF, positiveOrNull(socketSettings.getSendBufferSize()));
+        setChildOption(ChannelOption.MAX_MESSAGES_PER_READ, positiveOrNull(socketSettings.getMaxMessagesPerRead()));
+        setChildOption(ChannelOption.ALLOCATOR, allocator);
+
+        // Netty rejects a low water mark above the current high one and vice versa,
+        // so move the marks in whichever order keeps them valid against the defaults.
+        if (socketSettings.getWriteBufferLowWaterMark() > DEFAULT_WRITE_BUFFER_HIGH_WATER_MARK)
+        {
+            setChildOption(ChannelOption.WRITE_BUFFER_HIGH_WATER_MARK, socketSettings.getWriteBufferHighWaterMark());
+            setChildOption(ChannelOption.WRITE_BUFFER_LOW_WATER_MARK, socketSettings.getWriteBufferLowWaterMark());
+        }
+        else
+        {
+            setChildOption(ChannelOption.WRITE_BUFFER_LOW_WATER_MARK, socketSettings.getWriteBufferLowWaterMark());
+            setChildOption(ChannelOption.WRITE_BUFFER_HIGH_WATER_MARK, socketSettings.getWriteBufferHighWaterMark());
+        }
+    }
+
+    /**
+     * @param value null leaves the option at its default.
+     */
+    private <T> void setParentOption(ChannelOption<T> option, T value)
+    {
+        if (value == null) return;
+
+        bootstrap.option(option, value);
+        parentOptions.put(option, value);
+    }
+
+    /**
+     * @param value null leaves the option at its default.
+     */
+    private <T> void setChildOption(ChannelOption<T> option, T value)
+    {
+        if (value == null) return;
+
+        bootstrap.childOption(option, value);
+        childOptions.put(option, value);
+    }
+
+    private static Integer positiveOrNull(int value)
+    {
+        return (value > 0 ? Integer.valueOf(value) : null);
+    }
+
+    /**
+     * Describes the socket options in effect: for the listening socket, as read back
+     * from the bound channel; for connections, as set on each one when it's accepted.
+     *
+     * @return a human-readable report, or null before bind().
+     */
+    public String getSocketOptionsReport()
+    {
+        if (channel == null) return null;
+
+        StringBuilder sb = new StringBuilder(getName())
+            .append(" socket options (")
+            .append(boundTransport)
+            .append(", ")
+            .append(channels.size())
+            .append(channels.size() == 1 ? " acceptor" : " acceptors")
+            .append(")\n  listening:");
+
+        for (ChannelOption<?> option : parentOptions.keySet())
+        {
+            Object value = (channel.isOpen() ? channel.config().getOption(option) : parentOptions.get(option));
+            sb.append(' ').append(option).append('=').append(value);
+        }
+
+        sb.append("\n  connections:");
+
+        for (Map.Entry<ChannelOption<?>, Object> option : childOptions.entrySet())
+        {
+            sb.append(' ').append(option.getKey()).append('=').append(option.getValue());
+        }
+
+        return sb.toString();
     }
 
     /**
@@ -525,9 +1194,23 @@ public class NSxtNet {
      */
     public void shutdown()
     {
-        channel.closeFuture(); //.syncUninterruptibly();
+        for (Channel listener : channels)
+        {
+            listener.close();
+        }
+
         bossGroup.shutdownGracefully(); //.awaitUninterruptibly();
         workerGroup.shutdownGracefully(); //.awaitUninterruptibly();
+
+        if (executor != null)
+        {
+            executor.shutdown();
+        }
+
+        if (openFileCache != null)
+        {
+            openFileCache.clear();
+        }
     }
 
     /**
@@ -535,7 +1218,8 @@ public class NSxtNet {
      */
     private RouteResolver createRouteResolver()
     {
-        return new RouteResolver(routeDeclarations.createRouteMapping(routeDefaults));
+        RouteResolutionCache cache = (getRouteCacheSize() > 0 ? new RouteResolutionCache(getRouteCacheSize()) : null);
+        return new RouteResolver(routeDeclarations.createRouteMapping(routeDefaults), cache);
     }
 
     /**
@@ -553,6 +1237,17 @@ public class NSxtNet {
         return m;
     }
 
+    /**
+     * @return the ResponseCompressor of the server settings, or null if compression is off.
+     */
+    private ResponseCompressor createCompressor()
+    {
+        if (!serverSettings.useCompression()) return null;
+
+        return new ResponseCompressor(serverSettings.getCompressionThreshold(),
+            serverSettings.getCompressionLevel(), serverSettings.getUncompressedMediaTypes());
+    }
+
     /**
      * @param requestHandler
      */
@@ -592,4 +1287,38 @@ public class NSxtNet {
     {
         return routeDeclarations.uri(uriPattern, controller, routeDefaults);
     }
+
+    /**
+     * Logs each acceptor that fails to bind, and the socket options report once all of them
+     * have bound. The binds complete on the boss group's event loops, possibly concurrently.
+     */
+    private class BindListener
+    implements ChannelFutureListener
+    {
+        private final int port;
+        private final AtomicInteger remaining;
+        private final AtomicBoolean isFailed = new AtomicBoolean();
+
+        BindListener(int port, int acceptorCount)
+        {
+            super();
+            this.port = port;
+            this.remaining = new AtomicInteger(acceptorCount);
+        }
+
+        @Override
+        public void operationComplete(ChannelFuture future)
+        {
+            if (!future.isSuccess())
+            {
+                isFailed.set(true);
+                log.error("Failed to bind to port " + port, future.cause());
+            }
+
+            if (remaining.decrementAndGet() == 0 && !isFailed.get())
+            {
+                log.info(getSocketOptionsReport());
+            }
+        }
+    }
 }
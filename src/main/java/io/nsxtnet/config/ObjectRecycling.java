@@ -0,0 +1,50 @@
+/*
+    Copyright 2014, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package io.nsxtnet.config;
+
+/**
+ * Whether the Request, Response and MessageContext of each request are allocated anew or
+ * recycled through a pool of the event loop that received it (see Netty's Recycler).
+ *
+ * <p/>A recycled object is reset and reused once its request is complete: after the finally
+ * processors and the MessageObservers' onComplete(). Neither they nor the controllers may
+ * hold on to a Request or Response (or anything obtained from it, such as the query string
+ * map) past that point.
+ *
+ * @author kosh
+ * @since Jan 2, 2015
+ */
+public enum ObjectRecycling
+{
+	/**
+	 * Every request allocates its own objects. The default.
+	 */
+	NONE,
+
+	/**
+	 * The objects are reset and reused once their request is complete. Using one between its
+	 * release and its reuse throws an IllegalStateException; using one after its reuse goes
+	 * unnoticed, and reads another request's data.
+	 */
+	POOLED,
+
+	/**
+	 * For finding code that holds on to a Request or Response. The objects are reset once
+	 * their request is complete, but never reused: any later use throws an
+	 * IllegalStateException, whose cause is the stack trace of the release.
+	 */
+	DEBUG
+}
@@ -15,6 +15,13 @@
  */
 package io.nsxtnet.config;
 
+import io.nsxtnet.pipeline.FlushConsolidator;
+import io.nsxtnet.response.OpenFileCache;
+import io.nsxtnet.response.ResponseCompressor;
+
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * @author toddf
  * @since May 31, 2012
@@ -23,7 +30,12 @@ public class ServerSettings
 {
 	private static final int DEFAULT_IO_THREAD_COUNT = 0;
 	private static final int DEFAULT_EXECUTOR_THREAD_POOL_SIZE = 10;
+	private static final int DEFAULT_EXECUTOR_QUEUE_SIZE = 1024;
+	private static final int DEFAULT_MAX_PIPELINE_DEPTH = 32;
 	private static final int DEFAULT_MAX_CONTENT_SIZE = 25600;
+	private static final int DEFAULT_ROUTE_CACHE_SIZE = 0;
+	private static final int DEFAULT_ACCEPTOR_COUNT = 1;
+	private static final int NETTY_DEFAULT = -1;
 
 	private String name;
 	private int port;
@@ -41,6 +53,55 @@ public class ServerSettings
 	// this is the number of blocking requests the application can process simultaneously.
 	private int executorThreadPoolSize = DEFAULT_EXECUTOR_THREAD_POOL_SIZE;
 
+	// The number of requests that may wait for an executor thread. Further requests are
+	// answered with 503 Service Unavailable.
+	private int executorQueueSize = DEFAULT_EXECUTOR_QUEUE_SIZE;
+
+	// The number of pipelined requests in flight per connection at which reading from it
+	// pauses until the oldest is answered. Zero (0) for no limit.
+	private int maxPipelineDepth = DEFAULT_MAX_PIPELINE_DEPTH;
+
+	// The number of flushes a connection combines into one within a turn of its event loop.
+	// One (1) flushes each response on its own.
+	private int maxConsolidatedFlushes = FlushConsolidator.DEFAULT_MAX_CONSOLIDATED_FLUSHES;
+
+	// Whether each request's Request, Response and MessageContext are recycled per I/O thread.
+	private ObjectRecycling objectRecycling = ObjectRecycling.NONE;
+
+	// The number of resolved routes cached per I/O thread, by method and raw path.
+	// Zero (0) disables the cache.
+	private int routeCacheSize = DEFAULT_ROUTE_CACHE_SIZE;
+
+	// The transport of the boss and I/O thread groups.
+	private Transport transport = Transport.NIO;
+
+	// The number of listening sockets bound to the port with SO_REUSEPORT, each with its
+	// own acceptor thread. Only honored by the EPOLL transport; otherwise there's one.
+	private int acceptorCount = DEFAULT_ACCEPTOR_COUNT;
+
+	// Request and response buffers come from a PooledByteBufAllocator unless pooling is
+	// turned off (or SocketSettings names another allocator). The sizing values below
+	// apply to it; -1 leaves the Netty default in place.
+	private boolean useBufferPooling = true;
+	private boolean useDirectBuffers = true;
+	private int bufferArenaCount = NETTY_DEFAULT;
+	private int bufferPageSize = NETTY_DEFAULT;
+	private int bufferMaxOrder = NETTY_DEFAULT;
+	private int bufferTinyCacheSize = NETTY_DEFAULT;
+	private int bufferSmallCacheSize = NETTY_DEFAULT;
+	private int bufferNormalCacheSize = NETTY_DEFAULT;
+
+	// Response bodies of at least compressionThreshold bytes are compressed, if the client
+	// accepts gzip or deflate, unless their media type is listed as uncompressed.
+	private boolean useCompression = true;
+	private int compressionThreshold = ResponseCompressor.DEFAULT_THRESHOLD;
+	private int compressionLevel = ResponseCompressor.DEFAULT_LEVEL;
+	private List<String> uncompressedMediaTypes = new ArrayList<String>(ResponseCompressor.DEFAULT_UNCOMPRESSED_MEDIA_TYPES);
+
+	// The number of files of file responses kept open between responses. Zero (0) opens
+	// the file for each response.
+	private int maxOpenFiles = OpenFileCache.DEFAULT_MAX_OPEN_FILES;
+
 	public String getName()
 	{
 		return name;
@@ -91,6 +152,46 @@ public class ServerSettings
 		this.executorThreadPoolSize = executorThreadCount;
 	}
 	
+	public int getExecutorQueueSize()
+	{
+		return executorQueueSize;
+	}
+
+	public void setExecutorQueueSize(int executorQueueSize)
+	{
+		this.executorQueueSize = executorQueueSize;
+	}
+
+	public int getMaxPipelineDepth()
+	{
+		return maxPipelineDepth;
+	}
+
+	public void setMaxPipelineDepth(int maxPipelineDepth)
+	{
+		this.maxPipelineDepth = maxPipelineDepth;
+	}
+
+	public int getMaxConsolidatedFlushes()
+	{
+		return maxConsolidatedFlushes;
+	}
+
+	public void setMaxConsolidatedFlushes(int maxConsolidatedFlushes)
+	{
+		this.maxConsolidatedFlushes = maxConsolidatedFlushes;
+	}
+
+	public ObjectRecycling getObjectRecycling()
+	{
+		return objectRecycling;
+	}
+
+	public void setObjectRecycling(ObjectRecycling objectRecycling)
+	{
+		this.objectRecycling = objectRecycling;
+	}
+
 	public int getPort()
 	{
 		return port;
@@ -110,4 +211,178 @@ public class ServerSettings
     {
 	    this.maxContentSize = maxContentSize;
     }
+
+	public int getRouteCacheSize()
+	{
+		return routeCacheSize;
+	}
+
+	public void setRouteCacheSize(int routeCacheSize)
+	{
+		this.routeCacheSize = routeCacheSize;
+	}
+
+	public Transport getTransport()
+	{
+		return transport;
+	}
+
+	public void setTransport(Transport transport)
+	{
+		this.transport = transport;
+	}
+
+	public int getAcceptorCount()
+	{
+		return acceptorCount;
+	}
+
+	public void setAcceptorCount(int acceptorCount)
+	{
+		this.acceptorCount = acceptorCount;
+	}
+
+	public boolean useBufferPooling()
+	{
+		return useBufferPooling;
+	}
+
+	public void setUseBufferPooling(boolean useBufferPooling)
+	{
+		this.useBufferPooling = useBufferPooling;
+	}
+
+	public boolean useDirectBuffers()
+	{
+		return useDirectBuffers;
+	}
+
+	public void setUseDirectBuffers(boolean useDirectBuffers)
+	{
+		this.useDirectBuffers = useDirectBuffers;
+	}
+
+	/**
+	 * @return the number of arenas, for heap and direct buffers each. Defaults to Netty's: the
+	 * io.netty.allocator.numHeapArenas/numDirectArenas property, or one per core.
+	 */
+	public int getBufferArenaCount()
+	{
+		return bufferArenaCount;
+	}
+
+	public void setBufferArenaCount(int bufferArenaCount)
+	{
+		this.bufferArenaCount = bufferArenaCount;
+	}
+
+	/**
+	 * @return the page size of the arenas, a power of two. Defaults to 8192.
+	 */
+	public int getBufferPageSize()
+	{
+		return bufferPageSize;
+	}
+
+	public void setBufferPageSize(int bufferPageSize)
+	{
+		this.bufferPageSize = bufferPageSize;
+	}
+
+	/**
+	 * @return the chunk size, as pages shifted left by this order. Defaults to 11 (16MiB chunks).
+	 */
+	public int getBufferMaxOrder()
+	{
+		return bufferMaxOrder;
+	}
+
+	public void setBufferMaxOrder(int bufferMaxOrder)
+	{
+		this.bufferMaxOrder = bufferMaxOrder;
+	}
+
+	public int getBufferTinyCacheSize()
+	{
+		return bufferTinyCacheSize;
+	}
+
+	public void setBufferTinyCacheSize(int bufferTinyCacheSize)
+	{
+		this.bufferTinyCacheSize = bufferTinyCacheSize;
+	}
+
+	public int getBufferSmallCacheSize()
+	{
+		return bufferSmallCacheSize;
+	}
+
+	public void setBufferSmallCacheSize(int bufferSmallCacheSize)
+	{
+		this.bufferSmallCacheSize = bufferSmallCacheSize;
+	}
+
+	public int getBufferNormalCacheSize()
+	{
+		return bufferNormalCacheSize;
+	}
+
+	public void setBufferNormalCacheSize(int bufferNormalCacheSize)
+	{
+		this.bufferNormalCacheSize = bufferNormalCacheSize;
+	}
+
+	public boolean useCompression()
+	{
+		return useCompression;
+	}
+
+	public void setUseCompression(boolean useCompression)
+	{
+		this.useCompression = useCompression;
+	}
+
+	/**
+	 * @return the smallest response body, in bytes, that is compressed. Defaults to 1024.
+	 */
+	public int getCompressionThreshold()
+	{
+		return compressionThreshold;
+	}
+
+	public void setCompressionThreshold(int compressionThreshold)
+	{
+		this.compressionThreshold = compressionThreshold;
+	}
+
+	/**
+	 * @return the deflate level, 1 (fastest) to 9 (smallest). Defaults to 6.
+	 */
+	public int getCompressionLevel()
+	{
+		return compressionLevel;
+	}
+
+	public void setCompressionLevel(int compressionLevel)
+	{
+		this.compressionLevel = compressionLevel;
+	}
+
+	/**
+	 * @return the media types never compressed, e.g. "image/*". Modifiable.
+	 */
+	public List<String> getUncompressedMediaTypes()
+	{
+		return uncompressedMediaTypes;
+	}
+
+	public int getMaxOpenFiles()
+	{
+		return maxOpenFiles;
+	}
+
+	public void setMaxOpenFiles(int maxOpenFiles)
+	{
+		this.maxOpenFiles = maxOpenFiles;
+	}
 }
@@ -15,16 +15,78 @@
  */
 package io.nsxtnet.config;
 
+import io.netty.buffer.ByteBufAllocator;
+
 /**
+ * Tuning of the listening (parent) socket and of the accepted (child) connections.
+ * Values of zero (0) or null leave the OS or Netty default in place.
+ *
+ * <p/>Two presets cover the common cases: lowLatencyApi() for many small request/response
+ * exchanges and bulkTransfer() for large uploads and downloads.
+ *
  * @author toddf
  * @since May 31, 2012
  */
 public class SocketSettings
 {
+	private static final int KB = 1024;
+
+	// SECTION: PARENT (LISTENING SOCKET)
+
+	private int backlog = 1024;
+
+	// SECTION: CHILD (ACCEPTED CONNECTIONS)
+
 	private boolean useTcpNoDelay = true;
 	private int soLinger = -1; // disabled by default
 	private int receiveBufferSize = 262140; // Java default
+	private int sendBufferSize = 0; // OS default
 	private int connectTimeoutMillis = 10000; // netty default
+	private int writeBufferLowWaterMark = 32 * KB; // netty default
+	private int writeBufferHighWaterMark = 64 * KB; // netty default
+	private int maxMessagesPerRead = 0; // netty default
+	private ByteBufAllocator allocator = null; // netty default
+
+	/**
+	 * Small buffers and watermarks keep the per-connection footprint low and notice slow
+	 * readers early. Nagle stays off so small responses leave right away.
+	 */
+	public static SocketSettings lowLatencyApi()
+	{
+		SocketSettings settings = new SocketSettings();
+		settings.setUseTcpNoDelay(true);
+		settings.setBacklog(4096);
+		settings.setReceiveBufferSize(64 * KB);
+		settings.setSendBufferSize(64 * KB);
+		settings.setWriteBufferWaterMarks(8 * KB, 32 * KB);
+		settings.setMaxMessagesPerRead(16);
+		return settings;
+	}
+
+	/**
+	 * Large buffers and watermarks let big bodies stream with few wake-ups and system calls.
+	 */
+	public static SocketSettings bulkTransfer()
+	{
+		SocketSettings settings = new SocketSettings();
+		settings.setUseTcpNoDelay(false);
+		settings.setBacklog(512);
+		settings.setReceiveBufferSize(1024 * KB);
+		settings.setSendBufferSize(1024 * KB);
+		settings.setWriteBufferWaterMarks(256 * KB, 1024 * KB);
+		settings.setMaxMessagesPerRead(64);
+		return settings;
+	}
+
+	public int getBacklog()
+	{
+		return backlog;
+	}
+
+	public void setBacklog(int backlog)
+	{
+		this.backlog = backlog;
+	}
 
 	public boolean useTcpNoDelay()
 	{
@@ -56,6 +118,16 @@ public class SocketSettings
 		this.receiveBufferSize = receiveBufferSize;
 	}
 
+	public int getSendBufferSize()
+	{
+		return sendBufferSize;
+	}
+
+	public void setSendBufferSize(int sendBufferSize)
+	{
+		this.sendBufferSize = sendBufferSize;
+	}
+
 	public int getConnectTimeoutMillis()
 	{
 		return connectTimeoutMillis;
@@ -66,4 +138,51 @@ public class SocketSettings
 		this.connectTimeoutMillis = connectTimeoutMillis;
 	}
 
+	public int getWriteBufferLowWaterMark()
+	{
+		return writeBufferLowWaterMark;
+	}
+
+	public int getWriteBufferHighWaterMark()
+	{
+		return writeBufferHighWaterMark;
+	}
+
+	/**
+	 * A connection becomes unwritable once more than 'high' bytes are queued for it,
+	 * and writable again once that drops below 'low'.
+	 *
+	 * @param low the low water mark, in bytes.
+	 * @param high the high water mark, in bytes. Must not be less than low.
+	 */
+	public void setWriteBufferWaterMarks(int low, int high)
+	{
+		if (low < 0 || high < low)
+		{
+			throw new IllegalArgumentException("write buffer water marks must satisfy 0 <= low <= high: " + low + ", " + high);
+		}
+
+		this.writeBufferLowWaterMark = low;
+		this.writeBufferHighWaterMark = high;
+	}
+
+	public int getMaxMessagesPerRead()
+	{
+		return maxMessagesPerRead;
+	}
+
+	public void setMaxMessagesPerRead(int maxMessagesPerRead)
+	{
+		this.maxMessagesPerRead = maxMessagesPerRead;
+	}
+
+	public ByteBufAllocator getAllocator()
+	{
+		return allocator;
+	}
+
+	public void setAllocator(ByteBufAllocator allocator)
+	{
+		this.allocator = allocator;
+	}
 }
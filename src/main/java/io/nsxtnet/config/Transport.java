@@ -0,0 +1,41 @@
+/*
+    Copyright 2014, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package io.nsxtnet.config;
+
+/**
+ * The Netty transport the server's event loops and channels use.
+ *
+ * @author kosh
+ * @since Dec 21, 2014
+ */
+public enum Transport
+{
+	/**
+	 * Java NIO selectors. Available everywhere.
+	 */
+	NIO,
+
+	/**
+	 * The native, edge-triggered epoll transport. Linux only. Falls back to NIO if the
+	 * native library can't be loaded.
+	 */
+	EPOLL,
+
+	/**
+	 * EPOLL wherever the native library loads, NIO otherwise.
+	 */
+	AUTO
+}
@@ -12,7 +12,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import rx.Observable;
-import rx.Observer;
+import rx.functions.Action0;
+import rx.functions.Func1;
 
 import java.lang.reflect.Constructor;
 
@@ -30,41 +31,36 @@ public class DefaultNSxtNetRestAsyncController implements NSxtNetRestController
 		return processAsync(request, response);
 	}
 
+	/**
+	 * Returns the command's Observable, which the request handler completes the request
+	 * with once it emits. Failures are answered with 410 Gone.
+	 */
+	@SuppressWarnings("unchecked")
 	private Object processAsync(final Request request, final Response response) {
 		try {
 			Constructor<?> constructor = getCmdConstructor();
 			HystrixCommand<?> instance = (HystrixCommand<?>) constructor.newInstance(request, response);
-			Observable<?> fResult = (Observable<?>) instance.observe();
-			fResult.subscribe(new Observer<Object>() {
+			Observable<Object> fResult = (Observable<Object>) instance.observe();
+			return fResult.onErrorReturn(new Func1<Throwable, Object>() {
 
 				@Override
-				public void onCompleted() {
-					log.debug("completed : {}", request.getUrl());
-				}
-
-				@Override
-				public void onError(Throwable e) {
+				public Object call(Throwable e) {
 					log.error(e.toString(), e.getCause());
-/*					HttpServerHandler hsh = (HttpServerHandler) request.getAttachment("hsh");
-					hsh.processResponse(request, response, true,
-							new NSxtNetHttpResponse(response, HttpResponseStatus.GONE.getCode(), e.getCause().getClass()
-									.getSimpleName()));*/
+					Throwable cause = (e.getCause() != null ? e.getCause() : e);
+					return new NSxtNetHttpResponse(response, HttpResponseStatus.GONE.code(), cause.getClass().getSimpleName());
 				}
+			}).doOnCompleted(new Action0() {
 
 				@Override
-				public void onNext(Object result) {
-/*					HttpServerHandler hsh = (HttpServerHandler) request.getAttachment("hsh");
-					hsh.processResponse(request, response, true, result);*/
+				public void call() {
+					log.debug("completed : {}", request.getUrl());
 				}
 			});
 
 		} catch (Throwable e) {
 			log.error("Exception", e);
 			return new NSxtNetHttpResponse(response, HttpResponseStatus.NOT_IMPLEMENTED.code(), e.getCause().getClass().getSimpleName());
-
-		} finally {
 		}
-		return this;
 	}
 
 	private Constructor<?> getCmdConstructor() throws NoSuchMethodException {
@@ -7,10 +7,14 @@ import com.netflix.hystrix.HystrixCommand;
 import com.netflix.hystrix.HystrixCommandGroupKey;
 import com.netflix.hystrix.contrib.metrics.eventstream.HystrixMetricsPoller;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.http.DefaultHttpResponse;
-import io.netty.handler.codec.http.HttpResponse;
-import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.stream.ChunkedInput;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.util.CharsetUtil;
+import io.nsxtnet.exception.BadRequestException;
+import io.nsxtnet.exception.ServiceUnavailableException;
 import io.nsxtnet.http.Request;
 import io.nsxtnet.http.Response;
 import org.slf4j.Logger;
@@ -20,11 +24,10 @@ import javax.annotation.concurrent.ThreadSafe;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import static io.netty.handler.codec.http.HttpResponseStatus.OK;
-import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
-
 /**
  * @author toddf
  * @since Aug 31, 2010
@@ -43,17 +46,18 @@ public class MonitorStreamController implements NSxtNetRestController {
 		return null;
 	}
 
+	/**
+	 * Streams the metrics as Server-Sent Events, every 'delay' (500 by default) milliseconds,
+	 * with a ping when there are none, so that a dead client is noticed by a failed write. No
+	 * thread waits on the stream: a task on the channel's event loop drains the poller's
+	 * metrics and resumes the transfer. The poller is shut down when the connection closes. A
+	 * delay that isn't positive is rejected with a 400 before the response starts.
+	 */
 	@Override
 	public Object getMethod(Request request, Response response) {
-		return  null;
-/*		new MonitorStream().execute();
-
-		*//* ensure we aren't allowing more connections than we want *//*
-		int numberConnections = concurrentConnections.incrementAndGet();
-
 		int delay = 500;
 		try {
-			String d = (String) request.getParameter("delay");
+			String d = request.getHeader("delay");
 			if (d != null) {
 				delay = Integer.parseInt(d);
 			}
@@ -61,83 +65,114 @@ public class MonitorStreamController implements NSxtNetRestController {
 			// ignore if it's not a number
 		}
 
-		HystrixMetricsPoller poller = null;
-		try {
-			if (numberConnections > maxConcurrentConnections.get()) {
-				response.setResponseCode(503);
-				log.error("MaxConcurrentConnections reached: " + maxConcurrentConnections.get());
-				// response.sendError(503, "MaxConcurrentConnections reached: "
-				// + maxConcurrentConnections.get());
-
-				return new JsonHttpResponse(response, "MaxConcurrentConnections reached: "
-						+ maxConcurrentConnections.get());
-			} else {
-
-				HttpResponse httpResponse = new DefaultHttpResponse(HTTP_1_1, OK);
-
-				*//* initialize response *//*
-				httpResponse.setHeader("Content-Type", "text/event-stream");
-				httpResponse.setHeader("Cache-Control", "no-cache, no-store, max-age=0, must-revalidate");
-				httpResponse.setHeader("Pragma", "no-cache");
-
-				ChannelHandlerContext ctx = (ChannelHandlerContext) request.getAttachment("ctx");
-				ctx.channel().write(httpResponse);
-
-				MetricJsonListener jsonListener = new MetricJsonListener();
-				poller = new HystrixMetricsPoller(jsonListener, delay);
-
-				// start polling and it will write directly to the output stream
-				poller.start();
-				log.info("Starting poller");
-
-				// we will use a "single-writer" approach where the Servlet
-				// thread does all the writing
-				// by fetching JSON messages from the MetricJsonListener to
-				// write them to the output
-				try {
-					while (poller.isRunning() && ctx.getChannel().isOpen()) {
-						List<String> jsonMessages = jsonListener.getJsonMetrics();
-
-						if (jsonMessages.isEmpty()) {
-							// https://github.com/Netflix/Hystrix/issues/85
-							// hystrix.stream holds connection open if no
-							// metrics
-							// we send a ping to test the connection so that
-							// we'll get an IOException if the client has
-							// disconnected
-							ctx.getChannel().write(ChannelBuffers.copiedBuffer("ping: \n", CharsetUtil.UTF_8))
-									.addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
-						} else {
-							for (String json : jsonMessages) {
-								ctx.getChannel()
-										.write(ChannelBuffers.copiedBuffer("data: " + json + "\n\n", CharsetUtil.UTF_8))
-										.addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
-							}
-						}
-
-						// after outputting all the messages we will flush the
-						// stream
-						// response.flushBuffer();
-
-						// now wait the 'delay' time
-						Thread.sleep(delay);
-					}
-				} catch (Exception e) {
-					poller.shutdown();
-					log.error("Failed to write. Will stop polling.", e);
+		/* the tick can't be scheduled without a positive delay, and by then the response has started */
+		if (delay <= 0) {
+			throw new BadRequestException("delay must be positive: " + delay);
+		}
+
+		/* ensure we aren't allowing more connections than we want */
+		int numberConnections = concurrentConnections.incrementAndGet();
+
+		if (numberConnections > maxConcurrentConnections.get()) {
+			concurrentConnections.decrementAndGet();
+			log.error("MaxConcurrentConnections reached: " + maxConcurrentConnections.get());
+			throw new ServiceUnavailableException("MaxConcurrentConnections reached: " + maxConcurrentConnections.get());
+		}
+
+		/* initialize response */
+		response.setStreamingDownload(true);
+		response.setContentType("text/event-stream");
+		response.addHeader("Cache-Control", "no-cache, no-store, max-age=0, must-revalidate");
+		response.addHeader("Pragma", "no-cache");
+		return new MetricsEventStream(delay);
+	}
+
+	/**
+	 * The event stream of one connection. Counts as one of the concurrent connections until
+	 * closed, which the ChunkedWriteHandler does when the connection closes, or the request
+	 * handler does if the stream isn't written after all. Used on the channel's event loop only.
+	 */
+	private static class MetricsEventStream implements ChunkedInput<ByteBuf> {
+		private final int delay;
+		private final MetricJsonListener jsonListener = new MetricJsonListener();
+		private HystrixMetricsPoller poller;
+		private ScheduledFuture<?> tick;
+		private boolean isTickDue = false;
+		private boolean isClosed = false;
+
+		public MetricsEventStream(int delay) {
+			this.delay = delay;
+		}
+
+		@Override
+		public boolean isEndOfInput() throws Exception {
+			return isClosed || (poller != null && !poller.isRunning());
+		}
+
+		@Override
+		public ByteBuf readChunk(ChannelHandlerContext ctx) throws Exception {
+			if (poller == null) {
+				start(ctx);
+			}
+
+			if (!isTickDue) {
+				return null;
+			}
+
+			isTickDue = false;
+			List<String> jsonMessages = jsonListener.getJsonMetrics();
+
+			if (jsonMessages.isEmpty()) {
+				// https://github.com/Netflix/Hystrix/issues/85
+				// hystrix.stream holds connection open if no metrics
+				// we send a ping to test the connection so that the write
+				// fails if the client has disconnected
+				return Unpooled.copiedBuffer("ping: \n", CharsetUtil.UTF_8);
+			}
+
+			StringBuilder events = new StringBuilder();
+			for (String json : jsonMessages) {
+				events.append("data: ").append(json).append("\n\n");
+			}
+			return Unpooled.copiedBuffer(events, CharsetUtil.UTF_8);
+		}
+
+		/**
+		 * Called from the ChunkedWriteHandler, whose transfer the tick resumes.
+		 */
+		private void start(ChannelHandlerContext ctx) {
+			poller = new HystrixMetricsPoller(jsonListener, delay);
+			poller.start();
+			log.info("Starting poller");
+
+			final ChunkedWriteHandler writer = (ChunkedWriteHandler) ctx.handler();
+			tick = ctx.executor().scheduleWithFixedDelay(new Runnable() {
+				@Override
+				public void run() {
+					isTickDue = true;
+					writer.resumeTransfer();
 				}
-				log.debug("Stopping Turbine stream to connection");
+			}, delay, delay, TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public void close() throws Exception {
+			if (isClosed) {
+				return;
 			}
-		} catch (Exception e) {
-			log.error("Error initializing servlet for metrics event stream.", e);
-		} finally {
+
+			isClosed = true;
 			concurrentConnections.decrementAndGet();
+
+			if (tick != null) {
+				tick.cancel(false);
+			}
+
 			if (poller != null) {
 				poller.shutdown();
+				log.debug("Stopping Turbine stream to connection");
 			}
 		}
-
-		return new JsonHttpResponse(response, "MonitorStream Connection Closed");*/
 	}
 
 	/**
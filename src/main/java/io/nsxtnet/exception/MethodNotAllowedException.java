@@ -35,6 +35,7 @@ extends ServiceException
 	private static final HttpResponseStatus STATUS = HttpResponseStatus.METHOD_NOT_ALLOWED;
 	
 	private List<HttpMethod> allowedMethods;
+	private String allowHeader;
 
 	public MethodNotAllowedException(List<HttpMethod> allowed)
 	{
@@ -51,6 +52,18 @@ extends ServiceException
 		setAllowedMethods(allowed);
 	}
 
+	/**
+	 * @param message
+	 * @param allowed
+	 * @param allowHeader the precomputed Allow header value for the allowed methods.
+	 */
+	public MethodNotAllowedException(String message, List<HttpMethod> allowed, String allowHeader)
+	{
+		super(STATUS, message);
+		setAllowedMethods(allowed);
+		this.allowHeader = allowHeader;
+	}
+
 	/**
 	 * @param cause
 	 */
@@ -73,6 +86,7 @@ extends ServiceException
 	public void setAllowedMethods(List<HttpMethod> allowed)
 	{
 		this.allowedMethods = Collections.unmodifiableList(allowed);
+		this.allowHeader = null;
 	}
 	
 	public List<HttpMethod> getAllowedMethods()
@@ -86,6 +100,6 @@ extends ServiceException
 	@Override
 	public void augmentResponse(Response response)
 	{
-		response.addHeader(HttpHeaders.Names.ALLOW, StringUtils.join(",", getAllowedMethods()));
+		response.addHeader(HttpHeaders.Names.ALLOW, (allowHeader != null ? allowHeader : StringUtils.join(",", getAllowedMethods())));
 	}
 }
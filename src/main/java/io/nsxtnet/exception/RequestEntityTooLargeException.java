@@ -0,0 +1,59 @@
+/*
+    Copyright 2014, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+package io.nsxtnet.exception;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+/**
+ * @author kosh
+ * @since Dec 27, 2014
+ */
+public class RequestEntityTooLargeException
+extends ServiceException
+{
+    private static final long serialVersionUID = -2290713465538934015L;
+	private static final HttpResponseStatus STATUS = HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE;
+
+	public RequestEntityTooLargeException()
+	{
+		super(STATUS);
+	}
+
+	/**
+	 * @param message
+	 */
+	public RequestEntityTooLargeException(String message)
+	{
+		super(STATUS, message);
+	}
+
+	/**
+	 * @param cause
+	 */
+	public RequestEntityTooLargeException(Throwable cause)
+	{
+		super(STATUS, cause);
+	}
+
+	/**
+	 * @param message
+	 * @param cause
+	 */
+	public RequestEntityTooLargeException(String message, Throwable cause)
+	{
+		super(STATUS, message, cause);
+	}
+}
@@ -0,0 +1,59 @@
+/*
+    Copyright 2014, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+*/
+package io.nsxtnet.exception;
+
+import io.netty.handler.codec.http.HttpResponseStatus;
+
+/**
+ * @author kosh
+ * @since Dec 19, 2014
+ */
+public class ServiceUnavailableException
+extends ServiceException
+{
+    private static final long serialVersionUID = 4571940832127569340L;
+	private static final HttpResponseStatus STATUS = HttpResponseStatus.SERVICE_UNAVAILABLE;
+
+	public ServiceUnavailableException()
+	{
+		super(STATUS);
+	}
+
+	/**
+	 * @param message
+	 */
+	public ServiceUnavailableException(String message)
+	{
+		super(STATUS, message);
+	}
+
+	/**
+	 * @param cause
+	 */
+	public ServiceUnavailableException(Throwable cause)
+	{
+		super(STATUS, cause);
+	}
+
+	/**
+	 * @param message
+	 * @param cause
+	 */
+	public ServiceUnavailableException(String message, Throwable cause)
+	{
+		super(STATUS, message, cause);
+	}
+}
@@ -24,6 +24,7 @@ import io.netty.handler.codec.http.HttpMethod;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpVersion;
 import io.netty.handler.codec.http.QueryStringDecoder;
+import io.netty.util.Recycler;
 
 import io.nsxtnet.contenttype.ContentType;
 import io.nsxtnet.exception.BadRequestException;
@@ -32,6 +33,7 @@ import io.nsxtnet.route.RouteResolver;
 import io.nsxtnet.serialization.SerializationProvider;
 import io.nsxtnet.serialization.SerializationSettings;
 import io.nsxtnet.url.QueryStringParser;
+import io.nsxtnet.url.UrlMatch;
 
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
@@ -48,6 +50,15 @@ public class Request
 {
 	private static AtomicLong nextCorrelationId = new AtomicLong(0);
 
+	private static final Recycler<Request> RECYCLER = new Recycler<Request>()
+	{
+		@Override
+		protected Request newObject(Handle handle)
+		{
+			return new Request(handle);
+		}
+	};
+
 
 	// SECTION: INSTANCE VARIABLES
 
@@ -58,12 +69,18 @@ public class Request
 	private SerializationProvider serializationProvider;
 	private HttpMethod effectiveHttpMethod;
 	private Route resolvedRoute;
+	private UrlMatch urlMatch;
 	private String correlationId;
 	private Map<String, Object> attachments;
-	private Map<String, String> queryStringMap;
+	private final Map<String, String> queryStringMap = new HashMap<String, String>();
 
 	private SerializationSettings serializationSettings;
 
+	// Set once the request is complete, if this Request is recycled (see ObjectRecycling).
+	private final Recycler.Handle handle;
+	private boolean isReleased = false;
+	private Throwable releaseTrace;
+
 	
 	// SECTION: CONSTRUCTOR
 
@@ -73,23 +90,116 @@ public class Request
 	}
 
 	public Request(FullHttpRequest request, RouteResolver routeResolver, SerializationProvider serializationProvider)
+	{
+		this(null, request, routeResolver, serializationProvider);
+	}
+
+	public Request(SocketAddress socketAddress, FullHttpRequest request, RouteResolver routes, SerializationProvider serializationProvider)
 	{
 		super();
+		this.handle = null;
+		initialize(socketAddress, request, routes, serializationProvider);
+	}
+
+	private Request(Recycler.Handle handle)
+	{
+		super();
+		this.handle = handle;
+	}
+
+
+	// SECTION: RECYCLING
+
+	/**
+	 * Gets a Request from the calling thread's pool, rather than allocating one (see
+	 * ObjectRecycling). It must be released, with recycle() or invalidate(), once the request
+	 * is complete.
+	 */
+	public static Request newInstance(SocketAddress socketAddress, FullHttpRequest request, RouteResolver routes,
+		SerializationProvider serializationProvider)
+	{
+		Request instance = RECYCLER.get();
+		instance.isReleased = false;
+		instance.releaseTrace = null;
+		instance.initialize(socketAddress, request, routes, serializationProvider);
+		return instance;
+	}
+
+	/**
+	 * Clears this Request and, if it came from newInstance(), returns it to the pool. It
+	 * mustn't be used afterwards.
+	 * 
+	 * @throws IllegalStateException if it was released already.
+	 */
+	public void recycle()
+	{
+		release(null);
+
+		if (handle != null)
+		{
+			RECYCLER.recycle(this, handle);
+		}
+	}
+
+	/**
+	 * Clears this Request for good. Any later use throws an IllegalStateException, whose
+	 * cause has the stack trace of this call.
+	 * 
+	 * @throws IllegalStateException if it was released already.
+	 */
+	public void invalidate()
+	{
+		release(new Throwable("Request released"));
+	}
+
+	private void initialize(SocketAddress socketAddress, FullHttpRequest request, RouteResolver routes,
+		SerializationProvider serializationProvider)
+	{
 		this.httpRequest = request;
 		this.httpVersion = request.getProtocolVersion();
 		this.effectiveHttpMethod = request.getMethod();
-		this.routeResolver = routeResolver;
+		this.routeResolver = routes;
 		this.serializationProvider = serializationProvider;
-	    createCorrelationId();
-        this.queryStringMap = new HashMap<String, String>();
+		this.remoteAddress = socketAddress;
+		createCorrelationId();
 		parseQueryString(request);
 		determineEffectiveHttpMethod(request);
 	}
 
-	public Request(SocketAddress socketAddress, FullHttpRequest request, RouteResolver routes, SerializationProvider serializationProvider)
+	/**
+	 * Drops every reference this Request holds, so a pooled one keeps nothing of its last
+	 * request alive. The maps are kept, emptied, for the next.
+	 */
+	private void release(Throwable trace)
+	{
+		ensureAccessible();
+		httpRequest = null;
+		httpVersion = null;
+		remoteAddress = null;
+		routeResolver = null;
+		serializationProvider = null;
+		effectiveHttpMethod = null;
+		resolvedRoute = null;
+		urlMatch = null;
+		correlationId = null;
+		serializationSettings = null;
+		queryStringMap.clear();
+
+		if (attachments != null)
+		{
+			attachments.clear();
+		}
+
+		isReleased = true;
+		releaseTrace = trace;
+	}
+
+	private void ensureAccessible()
 	{
-		this(request, routes, serializationProvider);
-		this.remoteAddress = socketAddress;
+		if (isReleased)
+		{
+			throw new IllegalStateException("Request used after its request completed (see ObjectRecycling)", releaseTrace);
+		}
 	}
 
 	// SECTION: ACCESSORS/MUTATORS
@@ -101,6 +211,7 @@ public class Request
 	 */
 	public String getCorrelationId()
 	{
+		ensureAccessible();
 		return correlationId;
 	}
 
@@ -111,6 +222,7 @@ public class Request
 	 */
 	public HttpMethod getHttpMethod()
 	{
+		ensureAccessible();
 		return httpRequest.getMethod();
 	}
 	
@@ -122,6 +234,7 @@ public class Request
 	 */
 	public HttpMethod getEffectiveHttpMethod()
 	{
+		ensureAccessible();
 		return effectiveHttpMethod;
 	}
 
@@ -147,6 +260,7 @@ public class Request
 
 	public ByteBuf getBody()
     {
+		ensureAccessible();
 		return httpRequest.content();
     }
 
@@ -181,6 +295,7 @@ public class Request
 	 */
 	public SerializationSettings getSerializationSettings()
 	{
+		ensureAccessible();
 		if (serializationSettings == null)
 		{
 			serializationSettings = serializationProvider.resolveRequest(this);
@@ -211,15 +326,25 @@ public class Request
 		return instance;
 	}
 	/**
-	 * Returns the byte array underlying the Netty ChannelBuffer for this request.
-	 * However, if the ChannelBuffer returns false to hasArray(), this
-	 * method returns null.
+	 * Returns the bytes of the body of this request. If the body is exactly the byte
+	 * array underlying its ByteBuf, that array is returned. Otherwise (e.g. for pooled
+	 * or direct buffers) the bytes are copied.
 	 * 
-	 * @return an array of byte, or null, if the ChannelBuffer is not backed by a byte array.
+	 * @return an array of byte. Never null.
 	 */
 	public byte[] getBodyAsBytes()
 	{
-		return (getBody().hasArray() ? getBody().array() : null);
+		ByteBuf body = getBody();
+
+		if (body.hasArray() && body.arrayOffset() == 0 && body.readerIndex() == 0
+			&& body.array().length == body.readableBytes())
+		{
+			return body.array();
+		}
+
+		byte[] bytes = new byte[body.readableBytes()];
+		body.getBytes(body.readerIndex(), bytes);
+		return bytes;
 	}
 
 	/**
@@ -254,12 +379,15 @@ public class Request
 
 	public void setBody(ByteBuf body)
     {
+		ensureAccessible();
 		httpRequest.content().setBytes(0, body);
     }
 
 	public void clearHeaders()
 	{
+		ensureAccessible();
 		httpRequest.headers().clear();
+		urlMatch = null;
 	}
 
 	/**
@@ -277,7 +405,16 @@ public class Request
 	 */
 	public String getHeader(String name)
 	{
-		return httpRequest.headers().get(name);
+		ensureAccessible();
+		String value = httpRequest.headers().get(name);
+
+		if (value == null && urlMatch != null)
+		{
+			int index = indexOfUrlParameter(name);
+			value = (index < 0 ? null : urlMatch.getDecodedValue(index));
+		}
+
+		return value;
 	}
 
 	/**
@@ -294,7 +431,20 @@ public class Request
 	 */
 	public List<String> getHeaders(String name)
 	{
-		return httpRequest.headers().getAll(name);
+		ensureAccessible();
+		List<String> values = httpRequest.headers().getAll(name);
+
+		if (urlMatch != null)
+		{
+			int index = indexOfUrlParameter(name);
+
+			if (index >= 0)
+			{
+				values.add(urlMatch.getDecodedValue(index));
+			}
+		}
+
+		return values;
 	}
 	
 	/**
@@ -331,7 +481,21 @@ public class Request
 	*/
 	public Set<String> getHeaderNames()
 	{
-		return httpRequest.headers().names();
+		ensureAccessible();
+		Set<String> names = httpRequest.headers().names();
+
+		if (urlMatch != null)
+		{
+			for (int i = 0; i < urlMatch.size(); i++)
+			{
+				if (urlMatch.getValue(i) != null)
+				{
+					names.add(urlMatch.getName(i));
+				}
+			}
+		}
+
+		return names;
 	}
 	
 	/**
@@ -344,6 +508,7 @@ public class Request
 	*/
 	public void addHeader(String name, String value)
     {
+		ensureAccessible();
 		httpRequest.headers().add(name, value);
     }
 	
@@ -365,14 +530,29 @@ public class Request
 
 	public Route getResolvedRoute()
 	{
+		ensureAccessible();
 		return resolvedRoute;
 	}
 	
 	public void setResolvedRoute(Route route)
 	{
+		ensureAccessible();
 		this.resolvedRoute = route;
 	}
 
+	/**
+	 * Sets the parameters parsed from the URL by the resolved route. These are available
+	 * as (URL-decoded) headers, after any actual headers of the same name. Values are only
+	 * decoded when asked for.
+	 * 
+	 * @param match the UrlMatch of the resolved route.
+	 */
+	public void setUrlMatch(UrlMatch match)
+	{
+		ensureAccessible();
+		this.urlMatch = match;
+	}
+
 	/**
 	 * Gets the path for this request.
 	 * 
@@ -380,6 +560,7 @@ public class Request
 	 */
 	public String getPath()
 	{
+		ensureAccessible();
 		return httpRequest.getUri();
 	}
 	
@@ -424,6 +605,7 @@ public class Request
 	 */
 	public String getNamedUrl(HttpMethod method, String resourceName)
 	{
+		ensureAccessible();
 		Route route = routeResolver.getNamedRoute(resourceName, method);
 		
 		if (route != null)
@@ -443,6 +625,7 @@ public class Request
 	 */
 	public String getNamedPath(HttpMethod method, String resourceName)
 	{
+		ensureAccessible();
 		Route route = routeResolver.getNamedRoute(resourceName, method);
 		
 		if (route != null)
@@ -455,11 +638,13 @@ public class Request
 
 	public Map<String, String> getQueryStringMap()
 	{
+		ensureAccessible();
 		return queryStringMap;
 	}
 
 	public boolean isKeepAlive()
 	{
+		ensureAccessible();
 		return HttpHeaders.isKeepAlive(httpRequest);
 	}
 
@@ -480,6 +665,7 @@ public class Request
 	 */
 	public String getHost()
 	{
+		ensureAccessible();
 		return HttpHeaders.getHost(httpRequest);
 	}
 
@@ -490,6 +676,7 @@ public class Request
 	 */
 	public String getProtocol()
 	{
+		ensureAccessible();
 		return httpRequest.getProtocolVersion().protocolName().toLowerCase();
 	}
 	
@@ -534,6 +721,7 @@ public class Request
 	 */
 	public boolean isFlagged(String flag)
 	{
+		ensureAccessible();
 		return resolvedRoute.isFlagged(flag);
 	}
 	
@@ -549,6 +737,7 @@ public class Request
 	 */
 	public Object getParameter(String name)
 	{
+		ensureAccessible();
 		return resolvedRoute.getParameter(name);
 	}
 	
@@ -564,6 +753,7 @@ public class Request
 	 */
 	public Object getAttachment(String name)
 	{
+		ensureAccessible();
 		if (attachments != null)
 		{
 			return attachments.get(name);
@@ -595,6 +785,7 @@ public class Request
 	 */
 	public void putAttachment(String name, Object attachment)
 	{
+		ensureAccessible();
 		if (attachments == null)
 		{
 			attachments = new HashMap<String, Object>();
@@ -605,22 +796,42 @@ public class Request
 	
 	public HttpVersion getHttpVersion()
 	{
+		ensureAccessible();
 		return httpVersion;
 	}
 	
 	public boolean isHttpVersion1_0()
 	{
+		ensureAccessible();
 		return ((httpVersion.majorVersion() == 1) && (httpVersion.minorVersion() == 0));
 	}
 	
 	public SocketAddress getRemoteAddress()
 	{
+		ensureAccessible();
 		return remoteAddress;
 	}
 
 	
 	// SECTION: UTILITY - PRIVATE
 
+	/**
+	 * Header names are case insensitive, so URL parameters are looked up the same way.
+	 * Later parameters of the same name take precedence.
+	 */
+	private int indexOfUrlParameter(String name)
+	{
+		for (int i = urlMatch.size() - 1; i >= 0; i--)
+		{
+			if (urlMatch.getName(i).equalsIgnoreCase(name) && urlMatch.getValue(i) != null)
+			{
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
 	/**
 	 * Add the query string parameters to the request as headers.
 	 * Also parses the query string into the queryStringMap, if applicable. Note, if the query string
@@ -635,8 +846,6 @@ public class Request
 
 		if (parameters == null || parameters.isEmpty()) return;
 
-		queryStringMap = new HashMap<String, String>(parameters.size());
-		
 		for (Entry<String, List<String>> entry : parameters.entrySet())
 		{
 			queryStringMap.put(entry.getKey(), entry.getValue().get(0));
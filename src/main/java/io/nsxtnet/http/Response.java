@@ -18,6 +18,7 @@ package io.nsxtnet.http;
 
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.util.Recycler;
 import io.nsxtnet.query.QueryRange;
 import io.nsxtnet.serialization.SerializationSettings;
 
@@ -31,21 +32,115 @@ public class Response
 {
 	private static final String CONTENT_RANGE_HEADER_NAME = "Content-Range";
 
+	private static final Recycler<Response> RECYCLER = new Recycler<Response>()
+	{
+		@Override
+		protected Response newObject(Handle handle)
+		{
+			return new Response(handle);
+		}
+	};
+
 	
 	// SECTION: INSTANCE VARIABLES
 
 	private HttpResponseStatus responseCode = HttpResponseStatus.OK;
 	private Object body;
-	private Map<String, List<String>> headers = new HashMap<String, List<String>>();
+	private final Map<String, List<String>> headers = new HashMap<String, List<String>>();
 	private boolean isSerialized = true;
+	private boolean isOutboundEncoded = true;
+	private boolean isCompressed = true;
+	private boolean isStreamingDownload = false;
 	private Throwable exception = null;
 	private SerializationSettings serializationSettings;
+
+	// Set once the request is complete, if this Response is recycled (see ObjectRecycling).
+	private final Recycler.Handle handle;
+	private boolean isReleased = false;
+	private Throwable releaseTrace;
 	
 	// SECTION: CONSTRUCTORS
 
 	public Response()
+	{
+		this(null);
+	}
+
+	private Response(Recycler.Handle handle)
 	{
 		super();
+		this.handle = handle;
+	}
+
+
+	// SECTION: RECYCLING
+
+	/**
+	 * Gets a Response from the calling thread's pool, rather than allocating one (see
+	 * ObjectRecycling). It must be released, with recycle() or invalidate(), once the request
+	 * is complete.
+	 */
+	public static Response newInstance()
+	{
+		Response instance = RECYCLER.get();
+		instance.isReleased = false;
+		instance.releaseTrace = null;
+		return instance;
+	}
+
+	/**
+	 * Resets this Response and, if it came from newInstance(), returns it to the pool. It
+	 * mustn't be used afterwards.
+	 * 
+	 * @throws IllegalStateException if it was released already.
+	 */
+	public void recycle()
+	{
+		release(null);
+
+		if (handle != null)
+		{
+			RECYCLER.recycle(this, handle);
+		}
+	}
+
+	/**
+	 * Resets this Response for good. Any later use throws an IllegalStateException, whose
+	 * cause has the stack trace of this call.
+	 * 
+	 * @throws IllegalStateException if it was released already.
+	 */
+	public void invalidate()
+	{
+		release(new Throwable("Response released"));
+	}
+
+	/**
+	 * Restores the state of a new Response. The body is dropped, not released: by now the
+	 * request handler has released it, or handed it to the channel.
+	 */
+	private void release(Throwable trace)
+	{
+		ensureAccessible();
+		responseCode = HttpResponseStatus.OK;
+		body = null;
+		headers.clear();
+		isSerialized = true;
+		isOutboundEncoded = true;
+		isCompressed = true;
+		isStreamingDownload = false;
+		exception = null;
+		serializationSettings = null;
+		isReleased = true;
+		releaseTrace = trace;
+	}
+
+	private void ensureAccessible()
+	{
+		if (isReleased)
+		{
+			throw new IllegalStateException("Response used after its request completed (see ObjectRecycling)", releaseTrace);
+		}
 	}
 
 
@@ -53,6 +148,7 @@ public class Response
 
 	public Object getBody()
 	{
+		ensureAccessible();
 		return body;
 	}
 
@@ -63,16 +159,19 @@ public class Response
 
 	public void setBody(Object body)
 	{
+		ensureAccessible();
 		this.body = body;
 	}
 
 	public void clearHeaders()
 	{
+		ensureAccessible();
 		headers.clear();
 	}
 
 	public String getHeader(String name)
 	{
+		ensureAccessible();
 		List<String> list = headers.get(name);
 
 		if (list != null && !list.isEmpty())
@@ -85,6 +184,7 @@ public class Response
 
 	public List<String> getHeaders(String name)
 	{
+		ensureAccessible();
 		return headers.get(name);
 	}
 	
@@ -95,11 +195,13 @@ public class Response
 
 	public boolean hasHeaders()
 	{
+		ensureAccessible();
 		return !headers.isEmpty();
 	}
 
 	public Set<String> getHeaderNames()
 	{
+		ensureAccessible();
 		return headers.keySet();
 	}
 
@@ -111,6 +213,7 @@ public class Response
 	 */
 	public void addHeader(String name, String value)
 	{
+		ensureAccessible();
 		List<String> list = headers.get(name);
 		
 		if (list == null)
@@ -193,6 +296,7 @@ public class Response
 	 */
 	public void setResponseStatus(HttpResponseStatus status)
 	{
+		ensureAccessible();
 		this.responseCode = status;
 	}
 	
@@ -225,6 +329,7 @@ public class Response
 	 */
 	public HttpResponseStatus getResponseStatus()
 	{
+		ensureAccessible();
 		return responseCode;
 	}
 
@@ -235,6 +340,7 @@ public class Response
 
 	public void setContentType(String contentType)
     {
+		ensureAccessible();
 		List<String> list = headers.get(HttpHeaders.Names.CONTENT_TYPE);
 
 		if (list != null && !list.isEmpty())
@@ -250,14 +356,61 @@ public class Response
 
 	public boolean isSerialized()
 	{
+		ensureAccessible();
 		return isSerialized;
 	}
 	
 	public void setIsSerialized(boolean value)
 	{
+		ensureAccessible();
 		this.isSerialized = value;
 	}
 
+	/**
+	 * @return true if serializers that support outbound (XSS) encoding should apply it.
+	 */
+	public boolean isOutboundEncoded()
+	{
+		ensureAccessible();
+		return isOutboundEncoded;
+	}
+
+	public void setOutboundEncoded(boolean value)
+	{
+		ensureAccessible();
+		this.isOutboundEncoded = value;
+	}
+
+	/**
+	 * @return true if the body may be compressed, should the client accept it.
+	 */
+	public boolean isCompressed()
+	{
+		ensureAccessible();
+		return isCompressed;
+	}
+
+	public void setCompressed(boolean value)
+	{
+		ensureAccessible();
+		this.isCompressed = value;
+	}
+
+	/**
+	 * @return true if a ChunkedInput, InputStream or Iterator body is streamed rather than serialized.
+	 */
+	public boolean isStreamingDownload()
+	{
+		ensureAccessible();
+		return isStreamingDownload;
+	}
+
+	public void setStreamingDownload(boolean value)
+	{
+		ensureAccessible();
+		this.isStreamingDownload = value;
+	}
+
 	public void noSerialization()
 	{
 		setIsSerialized(false);
@@ -270,6 +423,7 @@ public class Response
 
 	public Throwable getException()
     {
+    	ensureAccessible();
     	return exception;
     }
 	
@@ -280,16 +434,19 @@ public class Response
 
 	public void setException(Throwable exception)
     {
+    	ensureAccessible();
     	this.exception = exception;
     }
 	
 	public void setSerializationSettings(SerializationSettings settings)
 	{
+		ensureAccessible();
 		this.serializationSettings = settings;
 	}
 	
 	public boolean hasSerializationSettings()
 	{
+		ensureAccessible();
 		return (serializationSettings != null);
 	}
 
@@ -307,6 +464,7 @@ public class Response
 
 	public SerializationSettings getSerializationSettings()
 	{
+		ensureAccessible();
 		return serializationSettings;
 	}
 }
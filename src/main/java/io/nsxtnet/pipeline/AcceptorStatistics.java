@@ -0,0 +1,121 @@
+/*
+    Copyright 2014, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package io.nsxtnet.pipeline;
+
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.AttributeKey;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Counts the connections accepted by each listening (server) channel it is installed on,
+ * e.g. the several channels bound to one port with SO_REUSEPORT. Install it as the handler
+ * of the ServerBootstrap, not as a child handler.
+ *
+ * <p/>Each counter is only written by the event loop of its listening channel, so reads
+ * from other threads are cheap but may lag slightly.
+ *
+ * @author kosh
+ * @since Dec 22, 2014
+ */
+@Sharable
+public class AcceptorStatistics
+extends ChannelInboundHandlerAdapter
+{
+	private static final AttributeKey<Counter> COUNTER = AttributeKey.valueOf("acceptorStatistics.counter");
+
+	private final List<Counter> counters = new CopyOnWriteArrayList<Counter>();
+	private final long startedAt = System.nanoTime();
+
+	@Override
+	public void handlerAdded(ChannelHandlerContext ctx)
+	throws Exception
+	{
+		Counter counter = new Counter();
+		ctx.channel().attr(COUNTER).set(counter);
+		counters.add(counter);
+	}
+
+	/**
+	 * A listening channel reads one accepted child channel per message.
+	 */
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg)
+	throws Exception
+	{
+		ctx.channel().attr(COUNTER).get().accepted++;
+		ctx.fireChannelRead(msg);
+	}
+
+	/**
+	 * @return the number of listening channels.
+	 */
+	public int getAcceptorCount()
+	{
+		return counters.size();
+	}
+
+	/**
+	 * @return the number of connections accepted by each listening channel, in the order they were bound.
+	 */
+	public long[] getAcceptedCounts()
+	{
+		Counter[] snapshot = counters.toArray(new Counter[0]);
+		long[] counts = new long[snapshot.length];
+
+		for (int i = 0; i < snapshot.length; i++)
+		{
+			counts[i] = snapshot[i].accepted;
+		}
+
+		return counts;
+	}
+
+	/**
+	 * @return the number of connections accepted by all listening channels.
+	 */
+	public long getAcceptedCount()
+	{
+		long count = 0;
+
+		for (Counter counter : counters)
+		{
+			count += counter.accepted;
+		}
+
+		return count;
+	}
+
+	/**
+	 * @return the average number of connections accepted per second, since the server was bound.
+	 */
+	public double getAcceptRate()
+	{
+		long elapsed = System.nanoTime() - startedAt;
+		return (elapsed <= 0 ? 0.0 : getAcceptedCount() * 1000000000.0 / elapsed);
+	}
+
+
+	// SECTION: INNER CLASSES
+
+	private static class Counter
+	{
+		private volatile long accepted = 0L;
+	}
+}
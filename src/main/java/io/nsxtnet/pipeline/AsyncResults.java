@@ -0,0 +1,309 @@
+/*
+ * Copyright 2014, Strategic Gains, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.nsxtnet.pipeline;
+
+import io.netty.util.concurrent.GenericFutureListener;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+
+import rx.Observable;
+import rx.Observer;
+
+/**
+ * Adapts the asynchronous values an action may return to a single callback. Supported are
+ * Netty Futures, CompletionStages (e.g. CompletableFuture), RxJava Observables (the last
+ * value emitted) and, as a last resort, plain Futures, which are waited on by an executor
+ * thread or, if there's none, polled from the event loop. An event loop never blocks on one.
+ *
+ * @author kosh
+ * @since Dec 20, 2014
+ */
+final class AsyncResults
+{
+	private static final long MIN_POLL_DELAY_MILLIS = 1L;
+	private static final long MAX_POLL_DELAY_MILLIS = 32L;
+
+	/**
+	 * Receives the outcome of an asynchronous result, exactly once, on whatever thread
+	 * completed it.
+	 */
+	public interface Callback
+	{
+		public void onSuccess(Object value);
+		public void onFailure(Throwable cause);
+	}
+
+	private AsyncResults()
+	{
+		// prevents instantiation.
+	}
+
+	/**
+	 * @param result the return value of an action.
+	 * @return true if the result is a value that completes later.
+	 */
+	public static boolean isAsync(Object result)
+	{
+		return (result instanceof Future
+			|| result instanceof CompletionStage
+			|| result instanceof Observable);
+	}
+
+	/**
+	 * Calls the callback once the result completes.
+	 *
+	 * @param result an asynchronous result, per isAsync().
+	 * @param waitExecutor where to wait on a plain Future that isn't done yet. May be null.
+	 * @param pollExecutor where to poll a plain Future that isn't done yet, if there's no
+	 * waitExecutor, e.g. the channel's event loop.
+	 * @param callback
+	 */
+	@SuppressWarnings("unchecked")
+	public static void subscribe(Object result, Executor waitExecutor, ScheduledExecutorService pollExecutor, Callback callback)
+	{
+		final Callback once = new OnceCallback(callback);
+
+		try
+		{
+			if (result instanceof io.netty.util.concurrent.Future)
+			{
+				subscribe((io.netty.util.concurrent.Future<Object>) result, once);
+			}
+			else if (result instanceof CompletionStage)
+			{
+				subscribe((CompletionStage<Object>) result, once);
+			}
+			else if (result instanceof Observable)
+			{
+				subscribe((Observable<Object>) result, once);
+			}
+			else
+			{
+				subscribe((Future<Object>) result, waitExecutor, pollExecutor, once);
+			}
+		}
+		catch (Throwable t)
+		{
+			once.onFailure(t);
+		}
+	}
+
+
+	// SECTION: UTILITY - PRIVATE
+
+	private static void subscribe(io.netty.util.concurrent.Future<Object> future, final Callback callback)
+	{
+		future.addListener(new GenericFutureListener<io.netty.util.concurrent.Future<Object>>()
+		{
+			@Override
+			public void operationComplete(io.netty.util.concurrent.Future<Object> f)
+			{
+				if (f.isSuccess())
+				{
+					callback.onSuccess(f.getNow());
+				}
+				else
+				{
+					callback.onFailure(f.cause());
+				}
+			}
+		});
+	}
+
+	private static void subscribe(CompletionStage<Object> stage, final Callback callback)
+	{
+		stage.whenComplete(new BiConsumer<Object, Throwable>()
+		{
+			@Override
+			public void accept(Object value, Throwable cause)
+			{
+				if (cause == null)
+				{
+					callback.onSuccess(value);
+				}
+				else
+				{
+					callback.onFailure(cause instanceof CompletionException && cause.getCause() != null ? cause.getCause() : cause);
+				}
+			}
+		});
+	}
+
+	private static void subscribe(Observable<Object> observable, final Callback callback)
+	{
+		observable.subscribe(new Observer<Object>()
+		{
+			private Object last;
+
+			@Override
+			public void onCompleted()
+			{
+				callback.onSuccess(last);
+			}
+
+			@Override
+			public void onError(Throwable e)
+			{
+				callback.onFailure(e);
+			}
+
+			@Override
+			public void onNext(Object value)
+			{
+				last = value;
+			}
+		});
+	}
+
+	private static void subscribe(final Future<Object> future, Executor waitExecutor, ScheduledExecutorService pollExecutor,
+		final Callback callback)
+	{
+		final Runnable waiter = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				try
+				{
+					callback.onSuccess(future.get());
+				}
+				catch (ExecutionException e)
+				{
+					callback.onFailure(e.getCause() != null ? e.getCause() : e);
+				}
+				catch (Throwable t)
+				{
+					callback.onFailure(t);
+				}
+			}
+		};
+
+		if (future.isDone())
+		{
+			waiter.run();
+			return;
+		}
+
+		try
+		{
+			if (waitExecutor != null)
+			{
+				waitExecutor.execute(waiter);
+			}
+			else
+			{
+				new Poller(future, pollExecutor, waiter, callback).schedule();
+			}
+		}
+		catch (RejectedExecutionException e)
+		{
+			callback.onFailure(e);
+		}
+	}
+
+
+	// SECTION: INNER CLASSES
+
+	/**
+	 * Checks whether a Future is done, with a delay doubling up to MAX_POLL_DELAY_MILLIS, then
+	 * runs the waiter, which no longer blocks.
+	 */
+	private static class Poller
+	implements Runnable
+	{
+		private final Future<Object> future;
+		private final ScheduledExecutorService executor;
+		private final Runnable waiter;
+		private final Callback callback;
+		private long delayMillis = MIN_POLL_DELAY_MILLIS;
+
+		public Poller(Future<Object> future, ScheduledExecutorService executor, Runnable waiter, Callback callback)
+		{
+			super();
+			this.future = future;
+			this.executor = executor;
+			this.waiter = waiter;
+			this.callback = callback;
+		}
+
+		public void schedule()
+		{
+			executor.schedule(this, delayMillis, TimeUnit.MILLISECONDS);
+		}
+
+		@Override
+		public void run()
+		{
+			if (future.isDone())
+			{
+				waiter.run();
+				return;
+			}
+
+			delayMillis = Math.min(delayMillis * 2, MAX_POLL_DELAY_MILLIS);
+
+			try
+			{
+				schedule();
+			}
+			catch (RejectedExecutionException e)
+			{
+				callback.onFailure(e);
+			}
+		}
+	}
+
+	private static class OnceCallback
+	implements Callback
+	{
+		private final Callback delegate;
+		private final AtomicBoolean isDone = new AtomicBoolean(false);
+
+		public OnceCallback(Callback delegate)
+		{
+			super();
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void onSuccess(Object value)
+		{
+			if (isDone.compareAndSet(false, true))
+			{
+				delegate.onSuccess(value);
+			}
+		}
+
+		@Override
+		public void onFailure(Throwable cause)
+		{
+			if (isDone.compareAndSet(false, true))
+			{
+				delegate.onFailure(cause);
+			}
+		}
+	}
+}
@@ -0,0 +1,91 @@
+/*
+    Copyright 2014, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package io.nsxtnet.pipeline;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the compressed request bodies inflated by the RequestDecompressors of all
+ * channels: their size on the wire versus their inflated size, and the requests rejected
+ * for exceeding the maximum content length.
+ *
+ * @author kosh
+ * @since Dec 27, 2014
+ */
+public class DecompressionStatistics
+{
+	private final LongAdder decompressedRequests = new LongAdder();
+	private final LongAdder wireBytes = new LongAdder();
+	private final LongAdder inflatedBytes = new LongAdder();
+	private final LongAdder rejectedRequests = new LongAdder();
+
+	void requestDecompressed()
+	{
+		decompressedRequests.increment();
+	}
+
+	void bytesReceived(long wire, long inflated)
+	{
+		wireBytes.add(wire);
+		inflatedBytes.add(inflated);
+	}
+
+	void requestRejected()
+	{
+		rejectedRequests.increment();
+	}
+
+	/**
+	 * @return the number of requests with a compressed (gzip or deflate) body.
+	 */
+	public long getDecompressedRequestCount()
+	{
+		return decompressedRequests.sum();
+	}
+
+	/**
+	 * @return the bytes of compressed bodies, as received.
+	 */
+	public long getWireBytes()
+	{
+		return wireBytes.sum();
+	}
+
+	/**
+	 * @return the bytes of compressed bodies, once inflated.
+	 */
+	public long getInflatedBytes()
+	{
+		return inflatedBytes.sum();
+	}
+
+	/**
+	 * @return the number of requests whose (inflated) body exceeded the maximum content length.
+	 */
+	public long getRejectedRequestCount()
+	{
+		return rejectedRequests.sum();
+	}
+
+	/**
+	 * @return inflated bytes per wire byte, or 0.0 before any compressed body was received.
+	 */
+	public double getCompressionRatio()
+	{
+		long wire = getWireBytes();
+		return (wire == 0 ? 0.0 : (double) getInflatedBytes() / wire);
+	}
+}
@@ -16,24 +16,39 @@
  */
 package io.nsxtnet.pipeline;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.handler.codec.DecoderResult;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
 import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpContent;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.LastHttpContent;
 import io.netty.util.Attribute;
 import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
 
+import io.nsxtnet.config.ObjectRecycling;
 import io.nsxtnet.contenttype.ContentType;
+import io.nsxtnet.exception.BadRequestException;
 import io.nsxtnet.exception.DefaultExceptionMapper;
 import io.nsxtnet.exception.ExceptionMapping;
 import io.nsxtnet.exception.ExceptionUtils;
 import io.nsxtnet.exception.ServiceException;
+import io.nsxtnet.exception.ServiceUnavailableException;
 import io.nsxtnet.http.Request;
 import io.nsxtnet.http.Response;
+import io.nsxtnet.response.ChunkedBodies;
 import io.nsxtnet.response.DefaultHttpResponseWriter;
+import io.nsxtnet.response.FileResponseWriter;
 import io.nsxtnet.response.HttpResponseWriter;
 import io.nsxtnet.route.Action;
 import io.nsxtnet.route.RouteResolver;
@@ -41,17 +56,30 @@ import io.nsxtnet.serialization.SerializationProvider;
 import io.nsxtnet.serialization.SerializationSettings;
 import io.nsxtnet.util.HttpSpecification;
 
+import java.nio.channels.ClosedChannelException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
+ * Routes each request on the event loop that received it, then runs the preprocessors,
+ * action, postprocessors and serialization either right there or, if an executor is set
+ * and the route doesn't opt out, on the executor. The response is always written on the
+ * channel's event loop.
+ * <p/>
+ * An action may return a value that completes later (see AsyncResults), in which case the
+ * postprocessors, serialization and write happen once it completes. The request stays
+ * retained until then.
+ * 
  * @author toddf
  * @since Nov 13, 2009
  */
 @ChannelHandler.Sharable
 public class DefaultRequestHandler extends SimpleChannelInboundHandler<Object>
 {
-	private static final AttributeKey<MessageContext> CONTEXT_KEY = AttributeKey.valueOf("context");
+	private static final AttributeKey<ResponseSequencer> SEQUENCER_KEY = AttributeKey.valueOf("sequencer");
+	private static final AttributeKey<UploadStream> UPLOAD_KEY = AttributeKey.valueOf("upload");
 
 	// SECTION: INSTANCE VARIABLES
 
@@ -63,6 +91,10 @@ public class DefaultRequestHandler extends SimpleChannelInboundHandler<Object>
 	private List<Postprocessor> finallyProcessors = new ArrayList<Postprocessor>();
 	private ExceptionMapping exceptionMap = new DefaultExceptionMapper();
 	private List<MessageObserver> messageObservers = new ArrayList<MessageObserver>();
+	private Executor executor;
+	private WritabilityStatistics writabilityStatistics = new WritabilityStatistics();
+	private int maxPipelineDepth = 0;
+	private ObjectRecycling objectRecycling = ObjectRecycling.NONE;
 
 
 	// SECTION: CONSTRUCTORS
@@ -117,6 +149,72 @@ public class DefaultRequestHandler extends SimpleChannelInboundHandler<Object>
 		this.responseWriter = writer;
 	}
 
+	public Executor getExecutor()
+	{
+		return executor;
+	}
+
+	/**
+	 * Sets the executor that processes requests off the event loop. The executor should
+	 * reject work when saturated (e.g. a ThreadPoolExecutor with a bounded queue), in
+	 * which case the request is answered with 503 Service Unavailable.
+	 * 
+	 * @param executor an Executor, or null to process all requests on the event loop.
+	 * @return this DefaultRequestHandler.
+	 */
+	public DefaultRequestHandler setExecutor(Executor executor)
+	{
+		this.executor = executor;
+		return this;
+	}
+
+	public WritabilityStatistics getWritabilityStatistics()
+	{
+		return writabilityStatistics;
+	}
+
+	public DefaultRequestHandler setWritabilityStatistics(WritabilityStatistics statistics)
+	{
+		this.writabilityStatistics = statistics;
+		return this;
+	}
+
+	public int getMaxPipelineDepth()
+	{
+		return maxPipelineDepth;
+	}
+
+	/**
+	 * Sets the number of pipelined requests in flight on a connection at which no further
+	 * requests are read from it, until the oldest is answered.
+	 * 
+	 * @param depth the maximum pipeline depth. Zero (0) for no limit.
+	 * @return this DefaultRequestHandler.
+	 */
+	public DefaultRequestHandler setMaxPipelineDepth(int depth)
+	{
+		this.maxPipelineDepth = depth;
+		return this;
+	}
+
+	public ObjectRecycling getObjectRecycling()
+	{
+		return objectRecycling;
+	}
+
+	/**
+	 * Sets whether each request's Request, Response and MessageContext are allocated anew
+	 * or recycled once the request is complete (see ObjectRecycling).
+	 * 
+	 * @param recycling the ObjectRecycling mode.
+	 * @return this DefaultRequestHandler.
+	 */
+	public DefaultRequestHandler setObjectRecycling(ObjectRecycling recycling)
+	{
+		this.objectRecycling = recycling;
+		return this;
+	}
+
 
 	// SECTION: SIMPLE-CHANNEL-UPSTREAM-HANDLER
 
@@ -130,19 +228,340 @@ public class DefaultRequestHandler extends SimpleChannelInboundHandler<Object>
 	public void channelRead0(ChannelHandlerContext ctx, Object msg)
 			throws Exception
 	{
-		if (!(msg instanceof HttpRequest)) return;
+		if (!(msg instanceof HttpRequest))
+		{
+			if (msg instanceof HttpContent)
+			{
+				receiveUploadChunk(ctx, (HttpContent) msg);
+			}
+
+			return;
+		}
+
+		if (!(msg instanceof FullHttpRequest))
+		{
+			startUpload(ctx, (HttpRequest) msg);
+			return;
+		}
 
 		FullHttpRequest event = (FullHttpRequest) msg;
-		MessageContext context = createInitialContext(ctx, event);
+		MessageContext context = createInitialContext(ctx, event, false);
+
+		try
+		{
+			notifyReceived(context);
+			checkDecoderResult(event);
+			resolveRoute(context);
+		}
+		catch(Throwable t)
+		{
+			handleRestExpressException(context, t);
+			completeRequest(ctx, context, false);
+			return;
+		}
+
+		dispatch(ctx, context, event);
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx)
+	throws Exception
+	{
+		UploadStream upload = ctx.attr(UPLOAD_KEY).getAndRemove();
+
+		// A failed upload was completed already. Any other is completed like any failure,
+		// so the finally processors and observers hear of it.
+		if (upload != null && !upload.isFailed())
+		{
+			failUpload(ctx, upload, new ClosedChannelException());
+		}
+
+		writabilityStatistics.unblocked(ctx.channel());
+		super.channelInactive(ctx);
+	}
+
+	/**
+	 * While the outbound buffer is above the high water mark, no further requests are read,
+	 * so their responses don't pile up in memory behind those the client is slow to take.
+	 * Chunked responses are held back by the ChunkedWriteHandler meanwhile.
+	 */
+	@Override
+	public void channelWritabilityChanged(ChannelHandlerContext ctx)
+	throws Exception
+	{
+		Channel channel = ctx.channel();
+
+		if (channel.isWritable())
+		{
+			writabilityStatistics.unblocked(channel);
+			ReadThrottle.of(channel).resume(ReadThrottle.UNWRITABLE);
+		}
+		else
+		{
+			writabilityStatistics.blocked(channel);
+			ReadThrottle.of(channel).suspend(ReadThrottle.UNWRITABLE);
+		}
+
+		super.channelWritabilityChanged(ctx);
+	}
+
+	/**
+	 * Processes the request on the executor or, if there's none or the route opts out, right here.
+	 */
+	private void dispatch(ChannelHandlerContext ctx, MessageContext context, FullHttpRequest event)
+	{
+		if (executor != null && !context.getAction().getRoute().isExecutedInIoThread())
+		{
+			processInBackground(ctx, context, event);
+		}
+		else
+		{
+			processRequest(ctx, context, event, true);
+		}
+	}
+
+	/**
+	 * Begins a request for a streaming upload route (see StreamingUploadRouter), whose body
+	 * follows in chunks. The request is created without a body.
+	 */
+	private void startUpload(ChannelHandlerContext ctx, HttpRequest head)
+	{
+		FullHttpRequest event = new DefaultFullHttpRequest(head.getProtocolVersion(), head.getMethod(), head.getUri(), Unpooled.EMPTY_BUFFER);
+		event.headers().set(head.headers());
+		event.setDecoderResult(head.getDecoderResult());
+		MessageContext context = createInitialContext(ctx, event, true);
+		UploadStream upload = new UploadStream(ctx.channel(), context, event);
+		ctx.attr(UPLOAD_KEY).set(upload);
 
 		try
 		{
 			notifyReceived(context);
+			checkDecoderResult(event);
 			resolveRoute(context);
+			Object controller = context.getAction().getRoute().getController();
+
+			// Only if method tunneling led to another route than StreamingUploadRouter saw.
+			if (!context.getAction().getRoute().isStreamingUpload())
+			{
+				throw new BadRequestException("Route doesn't accept streaming uploads: " + head.getMethod() + " " + head.getUri());
+			}
+
+			upload.setController((StreamingUploadController) controller);
+			upload.getController().onUploadStarted(context.getRequest(), upload);
+		}
+		catch (Throwable t)
+		{
+			failUpload(ctx, upload, t);
+		}
+	}
+
+	/**
+	 * Passes a chunk of a streaming upload to the controller. After the last, the request is
+	 * processed like any other.
+	 */
+	private void receiveUploadChunk(ChannelHandlerContext ctx, HttpContent chunk)
+	{
+		UploadStream upload = ctx.attr(UPLOAD_KEY).get();
+
+		if (upload == null) return;
+
+		boolean isLast = (chunk instanceof LastHttpContent);
+
+		if (isLast)
+		{
+			ctx.attr(UPLOAD_KEY).remove();
+			getSequencer(ctx).bodyReceived();
+		}
+
+		// Discard the rest of a failed upload.
+		if (upload.isFailed()) return;
+
+		try
+		{
+			upload.addReceivedBytes(chunk.content().readableBytes());
+			upload.getController().onUploadChunk(upload.getContext().getRequest(), chunk, upload);
+		}
+		catch (Throwable t)
+		{
+			failUpload(ctx, upload, t);
+			return;
+		}
+
+		if (isLast)
+		{
+			upload.resume();
+			dispatch(ctx, upload.getContext(), upload.getHttpRequest());
+		}
+	}
+
+	private void failUpload(ChannelHandlerContext ctx, UploadStream upload, Throwable cause)
+	{
+		upload.fail(cause);
+		handleRestExpressException(upload.getContext(), cause);
+		completeRequest(ctx, upload.getContext(), false);
+	}
+
+	/**
+	 * Runs processRequest() on the executor, then completes the request on the event loop.
+	 * The request is retained until then, as SimpleChannelInboundHandler releases it when
+	 * channelRead0() returns.
+	 */
+	private void processInBackground(final ChannelHandlerContext ctx, final MessageContext context, final FullHttpRequest event)
+	{
+		event.retain();
+
+		try
+		{
+			executor.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					processRequest(ctx, context, event, false);
+				}
+			});
+		}
+		catch (RejectedExecutionException e)
+		{
+			event.release();
+			handleRestExpressException(context, new ServiceUnavailableException("Server busy. Try again later.", e));
+			completeRequest(ctx, context, false);
+		}
+	}
+
+	private void completeInEventLoop(final ChannelHandlerContext ctx, final MessageContext context, final FullHttpRequest event,
+		final boolean isSuccessful)
+	{
+		try
+		{
+			ctx.executor().execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						completeRequest(ctx, context, isSuccessful);
+						ctx.flush();
+					}
+					finally
+					{
+						event.release();
+					}
+				}
+			});
+		}
+		catch (RejectedExecutionException e)
+		{
+			// The event loop is shutting down. There's no one left to answer.
+			event.release();
+		}
+	}
+
+	/**
+	 * Runs the preprocessors and the action, then completes the request with its result,
+	 * once that is available. Exceptions are turned into an error response.
+	 * 
+	 * @param isInEventLoop true if called from channelRead0(), in which case the request
+	 * isn't retained (yet) and a synchronous result is completed in place.
+	 */
+	private void processRequest(final ChannelHandlerContext ctx, final MessageContext context, final FullHttpRequest event,
+		boolean isInEventLoop)
+	{
+		Object result;
+
+		try
+		{
 			resolveResponseProcessor(context);
 			invokePreprocessors(preprocessors, context.getRequest());
-			Object result = context.getAction().invoke(context.getRequest(), context.getResponse());
+			result = context.getAction().invoke(context.getRequest(), context.getResponse());
+		}
+		catch(Throwable t)
+		{
+			handleRestExpressException(context, t);
+			complete(ctx, context, event, false, isInEventLoop);
+			return;
+		}
+
+		if (!AsyncResults.isAsync(result))
+		{
+			complete(ctx, context, event, processResult(context, result), isInEventLoop);
+			return;
+		}
+
+		if (isInEventLoop)
+		{
+			event.retain();
+		}
+
+		AsyncResults.subscribe(result, executor, ctx.executor(), new AsyncResults.Callback()
+		{
+			@Override
+			public void onSuccess(Object value)
+			{
+				processAsyncResult(ctx, context, event, value, null);
+			}
+
+			@Override
+			public void onFailure(Throwable cause)
+			{
+				processAsyncResult(ctx, context, event, null, cause);
+			}
+		});
+	}
+
+	/**
+	 * Processes the outcome of an asynchronous result on the executor (or the event loop,
+	 * if there's no executor), rather than on whatever thread completed it.
+	 */
+	private void processAsyncResult(final ChannelHandlerContext ctx, final MessageContext context, final FullHttpRequest event,
+		final Object value, final Throwable cause)
+	{
+		Runnable task = new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				boolean isSuccessful = false;
+
+				try
+				{
+					if (cause != null)
+					{
+						handleRestExpressException(context, cause);
+					}
+					else
+					{
+						isSuccessful = processResult(context, value);
+					}
+				}
+				finally
+				{
+					completeInEventLoop(ctx, context, event, isSuccessful);
+				}
+			}
+		};
 
+		try
+		{
+			(executor != null ? executor : ctx.executor()).execute(task);
+		}
+		catch (RejectedExecutionException e)
+		{
+			task.run();
+		}
+	}
+
+	/**
+	 * Sets the result as the response body, runs the postprocessors, then serializes the
+	 * response. Exceptions are turned into an error response.
+	 * 
+	 * @return true if the result was processed without exception.
+	 */
+	private boolean processResult(MessageContext context, Object result)
+	{
+		try
+		{
 			if (result != null)
 			{
 				context.getResponse().setBody(result);
@@ -151,20 +570,119 @@ public class DefaultRequestHandler extends SimpleChannelInboundHandler<Object>
 			invokePostprocessors(postprocessors, context.getRequest(), context.getResponse());
 			serializeResponse(context, false);
 			enforceHttpSpecification(context);
+			return true;
+		}
+		catch(Throwable t)
+		{
+			handleRestExpressException(context, t);
+			return false;
+		}
+	}
+
+	private void complete(ChannelHandlerContext ctx, MessageContext context, FullHttpRequest event, boolean isSuccessful,
+		boolean isInEventLoop)
+	{
+		if (isInEventLoop)
+		{
+			completeRequest(ctx, context, isSuccessful);
+		}
+		else
+		{
+			completeInEventLoop(ctx, context, event, isSuccessful);
+		}
+	}
+
+	/**
+	 * Completes the request once all those received before it on the connection are, so
+	 * that responses to pipelined requests are written in order (see ResponseSequencer),
+	 * then completes the ones after it that were waiting for it. Must be called on the
+	 * channel's event loop.
+	 */
+	private void completeRequest(ChannelHandlerContext ctx, MessageContext context, boolean isSuccessful)
+	{
+		ResponseSequencer sequencer = getSequencer(ctx);
+
+		if (!sequencer.complete(context, isSuccessful))
+		{
+			writeAndFinish(ctx, context, isSuccessful);
+			return;
+		}
+
+		ResponseSequencer.Pending next;
 
+		while ((next = sequencer.poll()) != null)
+		{
+			writeAndFinish(ctx, next.getContext(), next.isSuccessful());
+		}
+	}
+
+	/**
+	 * Writes the response, then notifies the finally processors and observers. A streamed
+	 * (chunked) response is only complete once its last chunk is written, so it's notified
+	 * from the write's listener.
+	 */
+	private void writeAndFinish(ChannelHandlerContext ctx, final MessageContext context, boolean isSuccessful)
+	{
+		boolean isStreamed = ChunkedBodies.isStreamed(context.getResponse());
+		ChannelFuture future = null;
+
+		try
+		{
 			// TODO: this is a problem if a FinallyProcessor changes the response.  It will only work in 'accidentally' and intermittently.
-			writeResponse(ctx, context);
-			notifySuccess(context);
+			future = writeResponse(ctx, context);
+
+			if (isSuccessful)
+			{
+				notifySuccess(context);
+			}
 		}
 		catch(Throwable t)
 		{
-			handleRestExpressException(ctx, t);
+			isStreamed = false;
+			handleRestExpressException(context, t);
+			writeResponse(ctx, context);
 		}
 		finally
 		{
-			// TODO: this is a problem if a FinallyProcessor changes the response.  It will only work in 'accidentally' and intermittently.
-			invokeFinallyProcessors(finallyProcessors, context.getRequest(), context.getResponse());
-			notifyComplete(context);
+			if (isStreamed && future != null)
+			{
+				future.addListener(new ChannelFutureListener()
+				{
+					@Override
+					public void operationComplete(ChannelFuture f)
+					throws Exception
+					{
+						invokeFinallyProcessors(finallyProcessors, context.getRequest(), context.getResponse());
+						notifyComplete(context);
+						releaseContext(context);
+					}
+				});
+			}
+			else
+			{
+				// TODO: this is a problem if a FinallyProcessor changes the response.  It will only work in 'accidentally' and intermittently.
+				invokeFinallyProcessors(finallyProcessors, context.getRequest(), context.getResponse());
+				notifyComplete(context);
+				releaseBody(context.getResponse());
+				releaseContext(context);
+			}
+		}
+	}
+
+	/**
+	 * Hands a complete request's objects back for reuse, or poisons them (see ObjectRecycling).
+	 * Nothing of the request is used past this point, the response having been written (or,
+	 * if streamed, taken over by the channel).
+	 */
+	private void releaseContext(MessageContext context)
+	{
+		if (objectRecycling == ObjectRecycling.POOLED)
+		{
+			context.recycle();
+		}
+		else if (objectRecycling == ObjectRecycling.DEBUG)
+		{
+			context.invalidate();
 		}
 	}
 
@@ -174,19 +692,51 @@ public class DefaultRequestHandler extends SimpleChannelInboundHandler<Object>
 		context.setSerializationSettings(s);
 	}
 
+	/**
+	 * The response holds a reference to a ByteBuf body (serialized or returned by the
+	 * action) until the request completes, or until the body is replaced by an error.
+	 * The writer takes a reference of its own for the channel. A chunked body that isn't
+	 * streamed after all is closed; once streamed, the channel closes it. A file body holds
+	 * nothing, but mustn't outlive an error that replaces it either.
+	 */
+	private void releaseBody(Response response)
+	{
+		if (response.getBody() instanceof ByteBuf)
+		{
+			ReferenceCountUtil.release(response.getBody());
+			response.setBody(null);
+		}
+		else if (ChunkedBodies.isChunked(response.getBody()))
+		{
+			ChunkedBodies.close(response.getBody());
+			response.setBody(null);
+		}
+		else if (FileResponseWriter.isFile(response.getBody()))
+		{
+			response.setBody(null);
+		}
+	}
+
 	/**
 	 * @param context
 	 */
 	private void enforceHttpSpecification(MessageContext context)
 	{
+		if (!HttpSpecification.isContentAllowed(context.getResponse()))
+		{
+			releaseBody(context.getResponse());
+		}
+
 		HttpSpecification.enforce(context.getResponse());
 	}
 
-	private void handleRestExpressException(ChannelHandlerContext ctx, Throwable cause)
-			throws Exception
+	/**
+	 * Sets the response up to report the exception. Doesn't write it.
+	 */
+	private void handleRestExpressException(MessageContext context, Throwable cause)
 	{
+		releaseBody(context.getResponse());
 		Throwable rootCause = mapServiceException(cause);
-		MessageContext context = ctx.attr(CONTEXT_KEY).get();
 
 		if (rootCause != null) // was/is a ServiceException
 		{
@@ -206,7 +756,6 @@ public class DefaultRequestHandler extends SimpleChannelInboundHandler<Object>
 		context.setException(rootCause);
 		notifyException(context);
 		serializeResponse(context, true);
-		writeResponse(ctx, context);
 	}
 
 	@Override
@@ -215,9 +764,7 @@ public class DefaultRequestHandler extends SimpleChannelInboundHandler<Object>
 	{
 		try
 		{
-			MessageContext messageContext = ctx.attr(CONTEXT_KEY).get();
-
-			if (messageContext != null)
+			for (MessageContext messageContext : getSequencer(ctx).getContexts())
 			{
 				messageContext.setException(throwable);
 				notifyException(messageContext);
@@ -234,16 +781,56 @@ public class DefaultRequestHandler extends SimpleChannelInboundHandler<Object>
 		}
 	}
 
-	private MessageContext createInitialContext(ChannelHandlerContext ctx, FullHttpRequest httpRequest)
+	/**
+	 * @param isBodyPending true for a streaming upload, whose body is yet to be read.
+	 */
+	private MessageContext createInitialContext(ChannelHandlerContext ctx, FullHttpRequest httpRequest, boolean isBodyPending)
 	{
 		Request request = createRequest(httpRequest, ctx);
 		Response response = createResponse();
-		MessageContext context = new MessageContext(request, response);
-		Attribute<MessageContext> attr = ctx.attr(CONTEXT_KEY);
-		attr.set(context);
+		MessageContext context = (objectRecycling == ObjectRecycling.NONE
+			? new MessageContext(request, response)
+			: MessageContext.newInstance(request, response));
+		context.setAllocator(ctx.alloc());
+		getSequencer(ctx).add(context, isBodyPending);
 		return context;
 	}
 
+	/**
+	 * @return the connection's ResponseSequencer, created on first use (on the event loop).
+	 */
+	private ResponseSequencer getSequencer(ChannelHandlerContext ctx)
+	{
+		Attribute<ResponseSequencer> attr = ctx.attr(SEQUENCER_KEY);
+		ResponseSequencer sequencer = attr.get();
+
+		if (sequencer == null)
+		{
+			sequencer = new ResponseSequencer(ctx.channel(), maxPipelineDepth);
+			attr.set(sequencer);
+		}
+
+		return sequencer;
+	}
+
+	/**
+	 * Fails requests the pipeline couldn't decode completely, e.g. with a body that
+	 * exceeded the maximum content length (see RequestDecompressor).
+	 */
+	private void checkDecoderResult(FullHttpRequest httpRequest)
+	{
+		DecoderResult result = httpRequest.getDecoderResult();
+
+		if (result.isSuccess()) return;
+
+		if (result.cause() instanceof ServiceException)
+		{
+			throw (ServiceException) result.cause();
+		}
+
+		throw new BadRequestException(result.cause());
+	}
+
 	private void resolveRoute(MessageContext context)
 	{
 		Action action = routeResolver.resolve(context.getRequest());
@@ -383,7 +970,12 @@ public class DefaultRequestHandler extends SimpleChannelInboundHandler<Object>
 	 */
 	private Request createRequest(FullHttpRequest httpRequest, ChannelHandlerContext context)
 	{
-		return new Request(context.channel().remoteAddress(), httpRequest, routeResolver, serializationProvider);
+		if (objectRecycling == ObjectRecycling.NONE)
+		{
+			return new Request(context.channel().remoteAddress(), httpRequest, routeResolver, serializationProvider);
+		}
+
+		return Request.newInstance(context.channel().remoteAddress(), httpRequest, routeResolver, serializationProvider);
 	}
 
 	/**
@@ -392,16 +984,16 @@ public class DefaultRequestHandler extends SimpleChannelInboundHandler<Object>
 	 */
 	private Response createResponse()
 	{
-		return new Response();
+		return (objectRecycling == ObjectRecycling.NONE ? new Response() : Response.newInstance());
 	}
 
 	/**
 	 * @param message
 	 * @return
 	 */
-	private void writeResponse(ChannelHandlerContext ctx, MessageContext context)
+	private ChannelFuture writeResponse(ChannelHandlerContext ctx, MessageContext context)
 	{
-		getResponseWriter().write(ctx, context.getRequest(), context.getResponse());
+		return getResponseWriter().write(ctx, context.getRequest(), context.getResponse());
 	}
 
 	private void serializeResponse(MessageContext context, boolean force)
@@ -423,9 +1015,10 @@ public class DefaultRequestHandler extends SimpleChannelInboundHandler<Object>
 
 			if (settings != null)
 			{
-				if (response.isSerialized())
+				// Streamed as is, chunk by chunk, or sent from the file.
+				if (response.isSerialized() && !ChunkedBodies.isStreamed(response) && !FileResponseWriter.isFile(response.getBody()))
 				{
-					String serialized = settings.serialize(response);
+					Object serialized = settings.serialize(response, context.getAllocator());
 
 					if (serialized != null)
 					{
@@ -439,7 +1032,8 @@ public class DefaultRequestHandler extends SimpleChannelInboundHandler<Object>
 				}
 			}
 
-			if (!response.hasHeader(HttpHeaders.Names.CONTENT_TYPE))
+			// A file's is guessed from its name, when written.
+			if (!response.hasHeader(HttpHeaders.Names.CONTENT_TYPE) && !FileResponseWriter.isFile(response.getBody()))
 			{
 				response.setContentType(ContentType.TEXT_PLAIN);
 			}
@@ -0,0 +1,176 @@
+/*
+    Copyright 2014, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package io.nsxtnet.pipeline;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+/**
+ * Combines the flushes a channel is asked for within one turn of its event loop into a
+ * single flush, and so a single write syscall. Sits at the head of the pipeline, so it
+ * sees every write and flush.
+ *
+ * <p/>A flush asked for while a read is in progress is held until the read completes,
+ * which responses written during it (including the DefaultRequestHandler's own flush in
+ * channelReadComplete()) then share. One asked for outside a read, e.g. by a response
+ * completed on an executor thread, is held until the tasks already queued on the event
+ * loop have run, so responses completed at the same time share it. A flush is never held
+ * longer than that: the latency it adds is bounded by a single turn of the event loop.
+ * Once maxConsolidatedFlushes are held, they are passed on right away.
+ *
+ * <p/>Flushes with nothing written since the last one are dropped. Held flushes are passed
+ * on before the channel closes. They aren't passed on when the channel becomes unwritable,
+ * as that happens in the middle of a write: draining the buffer there would make it writable
+ * again, and let the ChunkedWriteHandler write its next chunk into the one being encoded.
+ *
+ * <p/>Keeps per-channel state, so each channel needs an instance of its own.
+ *
+ * @author kosh
+ * @since Jan 2, 2015
+ */
+public class FlushConsolidator
+extends ChannelDuplexHandler
+{
+	public static final int DEFAULT_MAX_CONSOLIDATED_FLUSHES = 256;
+
+	private final int maxConsolidatedFlushes;
+	private final FlushStatistics statistics;
+	private ChannelHandlerContext context;
+	private boolean isReading = false;
+	private boolean hasUnflushedWrites = false;
+	private boolean isFlushScheduled = false;
+	private int heldFlushCount = 0;
+
+	private final Runnable scheduledFlush = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			isFlushScheduled = false;
+
+			if (!isReading)
+			{
+				flushHeld(context);
+			}
+		}
+	};
+
+	/**
+	 * @param maxConsolidatedFlushes the number of flushes combined at most. One (1) or less
+	 * passes every flush on right away.
+	 * @param statistics counts the flushes of all channels. May be null.
+	 */
+	public FlushConsolidator(int maxConsolidatedFlushes, FlushStatistics statistics)
+	{
+		super();
+		this.maxConsolidatedFlushes = maxConsolidatedFlushes;
+		this.statistics = (statistics != null ? statistics : new FlushStatistics());
+	}
+
+	@Override
+	public void handlerAdded(ChannelHandlerContext ctx)
+	throws Exception
+	{
+		this.context = ctx;
+	}
+
+	@Override
+	public void handlerRemoved(ChannelHandlerContext ctx)
+	throws Exception
+	{
+		flushHeld(ctx);
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg)
+	throws Exception
+	{
+		isReading = true;
+		ctx.fireChannelRead(msg);
+	}
+
+	@Override
+	public void channelReadComplete(ChannelHandlerContext ctx)
+	throws Exception
+	{
+		// The handlers' flushes in channelReadComplete() are still held, to be passed on as one.
+		ctx.fireChannelReadComplete();
+		isReading = false;
+		flushHeld(ctx);
+	}
+
+	@Override
+	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause)
+	throws Exception
+	{
+		flushHeld(ctx);
+		ctx.fireExceptionCaught(cause);
+	}
+
+	@Override
+	public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise)
+	throws Exception
+	{
+		hasUnflushedWrites = true;
+		ctx.write(msg, promise);
+	}
+
+	@Override
+	public void flush(ChannelHandlerContext ctx)
+	throws Exception
+	{
+		if (!hasUnflushedWrites) return;
+
+		statistics.requested();
+
+		if (++heldFlushCount >= maxConsolidatedFlushes)
+		{
+			flushHeld(ctx);
+		}
+		else if (!isReading && !isFlushScheduled)
+		{
+			isFlushScheduled = true;
+			ctx.executor().execute(scheduledFlush);
+		}
+	}
+
+	@Override
+	public void disconnect(ChannelHandlerContext ctx, ChannelPromise promise)
+	throws Exception
+	{
+		flushHeld(ctx);
+		ctx.disconnect(promise);
+	}
+
+	@Override
+	public void close(ChannelHandlerContext ctx, ChannelPromise promise)
+	throws Exception
+	{
+		flushHeld(ctx);
+		ctx.close(promise);
+	}
+
+	private void flushHeld(ChannelHandlerContext ctx)
+	{
+		if (heldFlushCount == 0) return;
+
+		heldFlushCount = 0;
+		hasUnflushedWrites = false;
+		statistics.flushed();
+		ctx.flush();
+	}
+}
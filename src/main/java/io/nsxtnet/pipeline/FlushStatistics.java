@@ -0,0 +1,58 @@
+/*
+    Copyright 2014, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package io.nsxtnet.pipeline;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts the flushes the handlers of all channels asked for, and those that reached the
+ * socket once the FlushConsolidator combined them. Each of the latter costs a write
+ * syscall, so fewer flushes per response means fewer syscalls per response.
+ *
+ * @author kosh
+ * @since Jan 2, 2015
+ */
+public class FlushStatistics
+{
+	private final LongAdder requestedFlushCount = new LongAdder();
+	private final LongAdder flushCount = new LongAdder();
+
+	void requested()
+	{
+		requestedFlushCount.increment();
+	}
+
+	void flushed()
+	{
+		flushCount.increment();
+	}
+
+	/**
+	 * @return the number of flushes asked for with something written since the last one.
+	 */
+	public long getRequestedFlushCount()
+	{
+		return requestedFlushCount.sum();
+	}
+
+	/**
+	 * @return the number of flushes passed on to the socket.
+	 */
+	public long getFlushCount()
+	{
+		return flushCount.sum();
+	}
+}
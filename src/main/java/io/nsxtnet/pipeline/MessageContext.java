@@ -15,19 +15,18 @@
  */
 package io.nsxtnet.pipeline;
 
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.util.Recycler;
 
-import io.nsxtnet.contenttype.ContentType;
 import io.nsxtnet.http.Parameters;
 import io.nsxtnet.http.Request;
 import io.nsxtnet.http.Response;
 import io.nsxtnet.route.Action;
 import io.nsxtnet.serialization.SerializationSettings;
 
-import java.net.URLDecoder;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Map.Entry;
 
 /**
  * @author toddf
@@ -35,29 +34,156 @@ import java.util.Map.Entry;
  */
 public class MessageContext
 {
+	private static final Recycler<MessageContext> RECYCLER = new Recycler<MessageContext>()
+	{
+		@Override
+		protected MessageContext newObject(Handle handle)
+		{
+			return new MessageContext(handle);
+		}
+	};
+
 	private Request request;
 	private Response response;
 	private Action action = null;
+	private ByteBufAllocator allocator = ByteBufAllocator.DEFAULT;
+	private long sequence = 0L;
+
+	// Set once the request is complete, if this MessageContext is recycled (see ObjectRecycling).
+	private final Recycler.Handle handle;
+	private boolean isReleased = false;
+	private Throwable releaseTrace;
 
 	public MessageContext(Request request, Response response)
 	{
 		super();
+		this.handle = null;
 		this.request = request;
 		this.response = response;
 	}
 
+	private MessageContext(Recycler.Handle handle)
+	{
+		super();
+		this.handle = handle;
+	}
+
+	/**
+	 * Gets a MessageContext from the calling thread's pool, rather than allocating one (see
+	 * ObjectRecycling). It must be released, with recycle() or invalidate(), once the request
+	 * is complete.
+	 */
+	public static MessageContext newInstance(Request request, Response response)
+	{
+		MessageContext instance = RECYCLER.get();
+		instance.isReleased = false;
+		instance.releaseTrace = null;
+		instance.request = request;
+		instance.response = response;
+		return instance;
+	}
+
+	/**
+	 * Recycles the request and response, then clears this MessageContext and, if it came from
+	 * newInstance(), returns it to the pool. None of them may be used afterwards.
+	 * 
+	 * @throws IllegalStateException if it was released already.
+	 */
+	public void recycle()
+	{
+		Request recycledRequest = request;
+		Response recycledResponse = response;
+		release(null);
+		recycledRequest.recycle();
+		recycledResponse.recycle();
+
+		if (handle != null)
+		{
+			RECYCLER.recycle(this, handle);
+		}
+	}
+
+	/**
+	 * Clears this MessageContext, its request and response for good. Any later use of them
+	 * throws an IllegalStateException, whose cause has the stack trace of this call.
+	 * 
+	 * @throws IllegalStateException if it was released already.
+	 */
+	public void invalidate()
+	{
+		Request invalidRequest = request;
+		Response invalidResponse = response;
+		release(new Throwable("MessageContext released"));
+		invalidRequest.invalidate();
+		invalidResponse.invalidate();
+	}
+
+	private void release(Throwable trace)
+	{
+		ensureAccessible();
+		request = null;
+		response = null;
+		action = null;
+		allocator = ByteBufAllocator.DEFAULT;
+		sequence = 0L;
+		isReleased = true;
+		releaseTrace = trace;
+	}
+
+	private void ensureAccessible()
+	{
+		if (isReleased)
+		{
+			throw new IllegalStateException("MessageContext used after its request completed (see ObjectRecycling)", releaseTrace);
+		}
+	}
+
+	/**
+	 * @return the allocator of the channel the request arrived on, for response buffers.
+	 */
+	public ByteBufAllocator getAllocator()
+	{
+		ensureAccessible();
+		return allocator;
+	}
+
+	public void setAllocator(ByteBufAllocator allocator)
+	{
+		ensureAccessible();
+		this.allocator = allocator;
+	}
+
+	/**
+	 * @return the position of the request among those received on its connection, from 0.
+	 * Responses are written in this order.
+	 */
+	public long getSequence()
+	{
+		ensureAccessible();
+		return sequence;
+	}
+
+	public void setSequence(long sequence)
+	{
+		ensureAccessible();
+		this.sequence = sequence;
+	}
+
 	public Request getRequest()
 	{
+		ensureAccessible();
 		return request;
 	}
 
 	public Response getResponse()
 	{
+		ensureAccessible();
 		return response;
 	}
 
 	public Action getAction()
 	{
+		ensureAccessible();
 		return action;
 	}
 
@@ -68,10 +194,14 @@ public class MessageContext
 
 	public void setAction(Action action)
 	{
+		ensureAccessible();
 		this.action = action;
-		addUrlParametersAsHeaders(getRequest(), action.getParameters());
+		getRequest().setUrlMatch(action.getMatch());
 		getRequest().setResolvedRoute(action.getRoute());
 		getResponse().setIsSerialized(action.shouldSerializeResponse());
+		getResponse().setOutboundEncoded(action.getRoute().isOutboundEncoded());
+		getResponse().setCompressed(action.getRoute().isCompressed());
+		getResponse().setStreamingDownload(action.getRoute().isStreamingDownload());
 	}
 
 	public Throwable getException()
@@ -126,23 +256,8 @@ public class MessageContext
     	return getAction().getRoute().getSupportedFormats();
     }
 
-	private void addUrlParametersAsHeaders(Request request, Collection<Entry<String, String>> parameters)
-    {
-		for (Entry<String, String> entry : parameters)
-		{
-			try
-            {
-	            request.addHeader(entry.getKey(), URLDecoder.decode(entry.getValue(), ContentType.ENCODING));
-            }
-            catch (Exception e)
-            {
-	            request.addHeader(entry.getKey(), entry.getValue());
-            }
-		}
-    }
-
 	public void setSerializationSettings(SerializationSettings settings)
     {
-		response.setSerializationSettings(settings);
+		getResponse().setSerializationSettings(settings);
     }
 }
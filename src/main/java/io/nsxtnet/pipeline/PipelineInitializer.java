@@ -11,6 +11,7 @@ import io.netty.handler.codec.http.HttpObjectAggregator;
 import io.netty.handler.codec.http.HttpRequestDecoder;
 import io.netty.handler.codec.http.HttpResponseEncoder;
 import io.netty.handler.stream.ChunkedWriteHandler;
+import io.nsxtnet.route.RouteResolver;
 
 /**
  * Provides a tiny DSL to define the pipeline features.
@@ -29,6 +30,10 @@ public class PipelineInitializer extends ChannelInitializer<SocketChannel>
 
 	private ChannelHandler requestHandler;
 	private int maxContentLength = DEFAULT_MAX_CONTENT_LENGTH;
+	private DecompressionStatistics decompressionStatistics;
+	private RouteResolver routeResolver;
+	private int maxConsolidatedFlushes = FlushConsolidator.DEFAULT_MAX_CONSOLIDATED_FLUSHES;
+	private FlushStatistics flushStatistics;
 
 
 	// SECTION: CONSTRUCTORS
@@ -48,10 +53,9 @@ public class PipelineInitializer extends ChannelInitializer<SocketChannel>
 	}
 
 	/**
-	 * Set the maximum length of the aggregated (chunked) content. If the length of the
-	 * aggregated content exceeds this value, a TooLongFrameException will be raised during
-	 * the request, which can be mapped in the RestExpress server to return a
-	 * BadRequestException, if desired.
+	 * Set the maximum length of the aggregated (chunked) content, after inflating it if it
+	 * was sent compressed. If the length of the content exceeds this value, the request
+	 * fails with a RequestEntityTooLargeException (413).
 	 *
 	 * @param value
 	 * @return this PipelineBuilder for method chaining.
@@ -62,6 +66,47 @@ public class PipelineInitializer extends ChannelInitializer<SocketChannel>
 		return this;
 	}
 
+	/**
+	 * @param statistics counts the compressed request bodies of all channels.
+	 * @return this PipelineBuilder for method chaining.
+	 */
+	public PipelineInitializer setDecompressionStatistics(DecompressionStatistics statistics)
+	{
+		this.decompressionStatistics = statistics;
+		return this;
+	}
+
+	/**
+	 * @param resolver determines which requests are for streaming upload routes, if there are any.
+	 * @return this PipelineBuilder for method chaining.
+	 */
+	public PipelineInitializer setRouteResolver(RouteResolver resolver)
+	{
+		this.routeResolver = resolver;
+		return this;
+	}
+
+	/**
+	 * @param value the number of flushes a channel combines at most (see FlushConsolidator).
+	 * One (1) or less passes every flush on right away.
+	 * @return this PipelineBuilder for method chaining.
+	 */
+	public PipelineInitializer setMaxConsolidatedFlushes(int value)
+	{
+		this.maxConsolidatedFlushes = value;
+		return this;
+	}
+
+	/**
+	 * @param statistics counts the flushes of all channels.
+	 * @return this PipelineBuilder for method chaining.
+	 */
+	public PipelineInitializer setFlushStatistics(FlushStatistics statistics)
+	{
+		this.flushStatistics = statistics;
+		return this;
+	}
+
 
 	// SECTION: CHANNEL PIPELINE FACTORY
 
@@ -71,14 +116,20 @@ public class PipelineInitializer extends ChannelInitializer<SocketChannel>
 	{
 		ChannelPipeline pipeline = ch.pipeline();
 
+		pipeline.addLast("flushConsolidator", new FlushConsolidator(maxConsolidatedFlushes, flushStatistics));
 		pipeline.addLast("decoder", new HttpRequestDecoder());
+
+		if (routeResolver != null && routeResolver.hasStreamingUploadRoutes())
+		{
+			pipeline.addLast("streamingUploads", new StreamingUploadRouter(routeResolver));
+		}
+
+		pipeline.addLast("inflater", new RequestDecompressor(maxContentLength, decompressionStatistics));
 		pipeline.addLast("aggregator", new HttpObjectAggregator(maxContentLength));
 		pipeline.addLast("encoder", new HttpResponseEncoder());
 		pipeline.addLast("chunkWriter", new ChunkedWriteHandler());
 
-		// TODO: fix GZIP handling in the pipeline
-//		pipeline.addLast("inflater", new HttpContentDecompressor());
-//		pipeline.addLast("deflater", new HttpContentCompressor());
+		// Responses are compressed by the DefaultHttpResponseWriter (see ResponseCompressor).
 		pipeline.addLast(requestHandler.getClass().getSimpleName(), requestHandler);
 	}
 }
@@ -0,0 +1,128 @@
+/*
+    Copyright 2014, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package io.nsxtnet.pipeline;
+
+import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Suspends reading from a channel (turns autoRead off) while any of the reasons to hold the
+ * client back holds, e.g. a paused upload or a full outbound buffer, and resumes it once none
+ * does. The reasons are kept apart so that lifting one doesn't lift another.
+ *
+ * <p/>May be used from any thread. autoRead is set on the channel's event loop, to the state
+ * of the reasons at that time, so the last change wins.
+ *
+ * @author kosh
+ * @since Dec 31, 2014
+ */
+final class ReadThrottle
+{
+	static final int UPLOAD_PAUSED = 1;
+	static final int UNWRITABLE = 2;
+	static final int PIPELINE_FULL = 4;
+
+	private static final AttributeKey<ReadThrottle> THROTTLE_KEY = AttributeKey.valueOf("readThrottle");
+
+	private final Channel channel;
+	private final AtomicInteger reasons = new AtomicInteger();
+	private final Runnable apply = new Runnable()
+	{
+		@Override
+		public void run()
+		{
+			channel.config().setAutoRead(reasons.get() == 0);
+		}
+	};
+
+	private ReadThrottle(Channel channel)
+	{
+		super();
+		this.channel = channel;
+	}
+
+	/**
+	 * @return the channel's ReadThrottle, created on first use.
+	 */
+	static ReadThrottle of(Channel channel)
+	{
+		Attribute<ReadThrottle> attribute = channel.attr(THROTTLE_KEY);
+		ReadThrottle throttle = attribute.get();
+
+		if (throttle == null)
+		{
+			ReadThrottle created = new ReadThrottle(channel);
+			throttle = attribute.setIfAbsent(created);
+
+			if (throttle == null)
+			{
+				throttle = created;
+			}
+		}
+
+		return throttle;
+	}
+
+	void suspend(int reason)
+	{
+		int current;
+
+		do
+		{
+			current = reasons.get();
+
+			if ((current & reason) != 0) return;
+		}
+		while (!reasons.compareAndSet(current, current | reason));
+
+		apply();
+	}
+
+	void resume(int reason)
+	{
+		int current;
+
+		do
+		{
+			current = reasons.get();
+
+			if ((current & reason) == 0) return;
+		}
+		while (!reasons.compareAndSet(current, current & ~reason));
+
+		apply();
+	}
+
+	boolean isSuspended(int reason)
+	{
+		return ((reasons.get() & reason) != 0);
+	}
+
+	private void apply()
+	{
+		if (channel.eventLoop().inEventLoop())
+		{
+			apply.run();
+		}
+		else
+		{
+			channel.eventLoop().execute(apply);
+		}
+	}
+}
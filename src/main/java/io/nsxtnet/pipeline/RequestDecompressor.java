@@ -0,0 +1,214 @@
+/*
+    Copyright 2014, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package io.nsxtnet.pipeline;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.DecoderResult;
+import io.netty.handler.codec.compression.JdkZlibDecoder;
+import io.netty.handler.codec.compression.ZlibWrapper;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpContentDecoder;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMessage;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.ReferenceCountUtil;
+import io.nsxtnet.exception.RequestEntityTooLargeException;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Inflates gzip or deflate request bodies chunk by chunk, ahead of the HttpObjectAggregator,
+ * and enforces the maximum content length on the inflated size rather than the size on the
+ * wire, so a small compressed body can't expand without bound.
+ *
+ * <p/>Once a body exceeds the limit, inflating stops, the request is ended with a failed
+ * LastHttpContent (a RequestEntityTooLargeException, which DefaultRequestHandler answers
+ * with 413) and the rest of the body is discarded as it arrives. Bodies without a
+ * Content-Encoding are held to the same limit, so they too get a 413 instead of a
+ * closed connection.
+ *
+ * <p/>Answers Expect: 100-continue itself, as the aggregator behind it can't (see sendContinue()).
+ *
+ * <p/>Keeps per-message state, so each channel needs an instance of its own.
+ *
+ * @author kosh
+ * @since Dec 27, 2014
+ */
+public class RequestDecompressor
+extends HttpContentDecoder
+{
+	private final int maxContentLength;
+	private final DecompressionStatistics statistics;
+
+	private boolean isCompressed;
+	private long inflatedLength;
+	private boolean isDiscarding;
+
+	/**
+	 * @param maxContentLength the largest inflated body accepted, in bytes.
+	 * @param statistics counts bytes and rejections. May be null.
+	 */
+	public RequestDecompressor(int maxContentLength, DecompressionStatistics statistics)
+	{
+		super();
+		this.maxContentLength = maxContentLength;
+		this.statistics = statistics;
+	}
+
+	/**
+	 * Unlike HttpContentDecompressor, always inflates with the JDK's zlib: Netty's
+	 * ZlibCodecFactory falls back to JZlib on JVM versions it doesn't recognize, and JZlib
+	 * isn't a dependency. Deflate bodies are accepted with or without the zlib wrapper.
+	 */
+	@Override
+	protected EmbeddedChannel newContentDecoder(String contentEncoding)
+	throws Exception
+	{
+		if ("gzip".equalsIgnoreCase(contentEncoding) || "x-gzip".equalsIgnoreCase(contentEncoding))
+		{
+			return new EmbeddedChannel(new JdkZlibDecoder(ZlibWrapper.GZIP));
+		}
+
+		if ("deflate".equalsIgnoreCase(contentEncoding) || "x-deflate".equalsIgnoreCase(contentEncoding))
+		{
+			return new EmbeddedChannel(new JdkZlibDecoder(ZlibWrapper.ZLIB_OR_NONE));
+		}
+
+		// Anything else is passed on as it is.
+		return null;
+	}
+
+	@Override
+	protected void decode(ChannelHandlerContext ctx, HttpObject msg, List<Object> out)
+	throws Exception
+	{
+		if (msg instanceof HttpMessage)
+		{
+			startMessage((HttpMessage) msg);
+			sendContinue(ctx, (HttpMessage) msg);
+		}
+
+		if (isDiscarding)
+		{
+			// MessageToMessageDecoder releases the content.
+			isDiscarding = !(msg instanceof LastHttpContent);
+			return;
+		}
+
+		// Read before decoding, which consumes the content.
+		int wire = (msg instanceof HttpContent ? ((HttpContent) msg).content().readableBytes() : 0);
+		int first = out.size();
+		super.decode(ctx, msg, out);
+
+		if (!(msg instanceof HttpContent)) return;
+
+		long inflated = countContent(out, first);
+		inflatedLength += inflated;
+
+		if (isCompressed && statistics != null)
+		{
+			statistics.bytesReceived(wire, inflated);
+		}
+
+		if (inflatedLength > maxContentLength)
+		{
+			reject(out, first);
+			isDiscarding = !(msg instanceof LastHttpContent);
+		}
+	}
+
+	private void startMessage(HttpMessage message)
+	{
+		String encoding = message.headers().get(HttpHeaders.Names.CONTENT_ENCODING);
+		isCompressed = (encoding != null && !HttpHeaders.Values.IDENTITY.equalsIgnoreCase(encoding.trim()));
+		inflatedLength = 0L;
+		isDiscarding = false;
+
+		if (isCompressed && statistics != null)
+		{
+			statistics.requestDecompressed();
+		}
+	}
+
+	/**
+	 * HttpContentDecoder holds the head back until the first chunk of the body, which a client
+	 * expecting 100-continue doesn't send until told to, so the aggregator would never see the
+	 * head in time to answer it. Answers it here instead, written from the tail through the
+	 * encoder, and drops the Expect header so that the aggregator doesn't answer it again.
+	 */
+	private static void sendContinue(ChannelHandlerContext ctx, HttpMessage message)
+	{
+		if (!HttpHeaders.is100ContinueExpected(message)) return;
+
+		ctx.channel().writeAndFlush(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.CONTINUE, Unpooled.EMPTY_BUFFER));
+		message.headers().remove(HttpHeaders.Names.EXPECT);
+	}
+
+	private static long countContent(List<Object> out, int first)
+	{
+		long length = 0L;
+
+		for (int i = first; i < out.size(); i++)
+		{
+			Object decoded = out.get(i);
+
+			if (decoded instanceof HttpContent)
+			{
+				length += ((HttpContent) decoded).content().readableBytes();
+			}
+		}
+
+		return length;
+	}
+
+	/**
+	 * Replaces the content decoded from this chunk with a failed LastHttpContent, which
+	 * makes the aggregator complete the request with that failure.
+	 */
+	private void reject(List<Object> out, int first)
+	{
+		Iterator<Object> decoded = out.listIterator(first);
+
+		while (decoded.hasNext())
+		{
+			Object object = decoded.next();
+
+			if (object instanceof HttpContent)
+			{
+				ReferenceCountUtil.release(object);
+				decoded.remove();
+			}
+		}
+
+		LastHttpContent failure = new DefaultLastHttpContent(Unpooled.EMPTY_BUFFER);
+		failure.setDecoderResult(DecoderResult.failure(new RequestEntityTooLargeException(
+			"Request body exceeds " + maxContentLength + " bytes" + (isCompressed ? " when inflated" : ""))));
+		out.add(failure);
+
+		if (statistics != null)
+		{
+			statistics.requestRejected();
+		}
+	}
+}
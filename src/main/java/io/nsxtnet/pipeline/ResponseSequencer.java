@@ -0,0 +1,162 @@
+/*
+    Copyright 2014, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package io.nsxtnet.pipeline;
+
+import io.netty.channel.Channel;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the requests in flight on a connection in the order received, so that their
+ * responses are written in that order, as HTTP/1.1 pipelining requires, however the
+ * processing of each completes. A response completed ahead of those before it waits here.
+ *
+ * <p/>Once maxDepth requests are in flight, no more are read from the connection (see
+ * ReadThrottle) until the oldest is answered. Requests already read with them are still
+ * accepted. Used on the channel's event loop only.
+ *
+ * @author kosh
+ * @since Jan 1, 2015
+ */
+final class ResponseSequencer
+{
+	private final Channel channel;
+	private final int maxDepth;
+	private final ArrayDeque<Pending> pending = new ArrayDeque<Pending>();
+	private long nextSequence = 0L;
+
+	/**
+	 * @param maxDepth the number of requests in flight at which reading pauses. Zero (0) for no limit.
+	 */
+	ResponseSequencer(Channel channel, int maxDepth)
+	{
+		super();
+		this.channel = channel;
+		this.maxDepth = maxDepth;
+	}
+
+	/**
+	 * Numbers the request and queues it for its response. A request whose body is still to
+	 * be read (a streaming upload) doesn't count against the depth until it is (see
+	 * bodyReceived()), as pausing reading would keep it from ever completing.
+	 *
+	 * @param isBodyPending true if the request's body follows in chunks.
+	 */
+	void add(MessageContext context, boolean isBodyPending)
+	{
+		context.setSequence(nextSequence++);
+		pending.addLast(new Pending(context));
+
+		if (!isBodyPending)
+		{
+			checkDepth();
+		}
+	}
+
+	/**
+	 * Counts a streaming upload against the depth, now that its body is read.
+	 */
+	void bodyReceived()
+	{
+		checkDepth();
+	}
+
+	/**
+	 * @return false if the request isn't in flight here, in which case it's up to the caller
+	 * to answer it.
+	 */
+	boolean complete(MessageContext context, boolean isSuccessful)
+	{
+		for (Pending p : pending)
+		{
+			if (p.context == context)
+			{
+				p.isDone = true;
+				p.isSuccessful = isSuccessful;
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return the oldest request in flight, if it is complete, removing it. Otherwise null.
+	 */
+	Pending poll()
+	{
+		Pending next = pending.peekFirst();
+
+		if (next == null || !next.isDone) return null;
+
+		pending.removeFirst();
+
+		if (maxDepth > 0 && pending.size() < maxDepth)
+		{
+			ReadThrottle.of(channel).resume(ReadThrottle.PIPELINE_FULL);
+		}
+
+		return next;
+	}
+
+	private void checkDepth()
+	{
+		if (maxDepth > 0 && pending.size() >= maxDepth)
+		{
+			ReadThrottle.of(channel).suspend(ReadThrottle.PIPELINE_FULL);
+		}
+	}
+
+	/**
+	 * @return the contexts of the requests in flight, oldest first.
+	 */
+	List<MessageContext> getContexts()
+	{
+		List<MessageContext> contexts = new ArrayList<MessageContext>(pending.size());
+
+		for (Pending p : pending)
+		{
+			contexts.add(p.context);
+		}
+
+		return contexts;
+	}
+
+	static final class Pending
+	{
+		private final MessageContext context;
+		private boolean isDone = false;
+		private boolean isSuccessful = false;
+
+		private Pending(MessageContext context)
+		{
+			super();
+			this.context = context;
+		}
+
+		MessageContext getContext()
+		{
+			return context;
+		}
+
+		boolean isSuccessful()
+		{
+			return isSuccessful;
+		}
+	}
+}
@@ -0,0 +1,56 @@
+/*
+    Copyright 2014, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package io.nsxtnet.pipeline;
+
+import io.netty.handler.codec.http.HttpContent;
+import io.nsxtnet.http.Request;
+
+/**
+ * Implemented by the controllers of routes declared with RouteBuilder.useStreamingMultipartUpload().
+ * Their request bodies aren't aggregated (nor limited by the maximum content size); the
+ * controller receives them chunk by chunk, as they arrive, instead. Once the last chunk is
+ * in, the route's action is invoked as usual, with an empty body, to create the response.
+ *
+ * <p/>The callbacks run on the channel's I/O thread and must not block. To slow the client
+ * down, e.g. while a chunk is written elsewhere, pause() the UploadStream and resume() it
+ * later, from any thread. The body is passed on as sent: a Content-Encoding isn't undone.
+ *
+ * <p/>Exceptions thrown by onUploadStarted() or onUploadChunk() fail the request as an
+ * exception in the action would; the rest of the body is then discarded.
+ *
+ * @author kosh
+ * @since Dec 28, 2014
+ */
+public interface StreamingUploadController
+{
+	/**
+	 * Called when the request head arrives. The URL parameters and headers are available,
+	 * the body isn't.
+	 */
+	public void onUploadStarted(Request request, UploadStream stream);
+
+	/**
+	 * Called for each chunk of the body, the last one being a LastHttpContent. The chunk is
+	 * released when the call returns; retain() it to keep it longer.
+	 */
+	public void onUploadChunk(Request request, HttpContent chunk, UploadStream stream);
+
+	/**
+	 * Called instead of further chunks if the upload can't complete, e.g. because the
+	 * connection closed or onUploadChunk() threw.
+	 */
+	public void onUploadFailed(Request request, Throwable cause);
+}
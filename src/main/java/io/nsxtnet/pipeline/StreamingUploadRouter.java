@@ -0,0 +1,87 @@
+/*
+    Copyright 2014, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package io.nsxtnet.pipeline;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.nsxtnet.route.RouteResolver;
+
+/**
+ * Sits between the request decoder and the HttpObjectAggregator and sends the parts of
+ * requests for streaming upload routes (the head, then each chunk of the body) around the
+ * aggregator, and the RequestDecompressor, straight on to the DefaultRequestHandler. Other
+ * requests pass through to be aggregated as usual.
+ *
+ * <p/>Keeps per-request state, so each channel needs an instance of its own. Only installed
+ * if there are streaming upload routes.
+ *
+ * @author kosh
+ * @since Dec 28, 2014
+ */
+public class StreamingUploadRouter
+extends ChannelInboundHandlerAdapter
+{
+	private final RouteResolver routeResolver;
+	private boolean isStreaming = false;
+
+	public StreamingUploadRouter(RouteResolver routeResolver)
+	{
+		super();
+		this.routeResolver = routeResolver;
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg)
+	throws Exception
+	{
+		if (msg instanceof HttpRequest)
+		{
+			HttpRequest head = (HttpRequest) msg;
+			isStreaming = (!(msg instanceof FullHttpRequest)
+				&& head.getDecoderResult().isSuccess()
+				&& routeResolver.isStreamingUpload(head.getMethod(), head.getUri()));
+
+			// The aggregator would have answered this. Written from the tail, through the encoder.
+			if (isStreaming && HttpHeaders.is100ContinueExpected(head))
+			{
+				ctx.channel().writeAndFlush(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.CONTINUE, Unpooled.EMPTY_BUFFER));
+			}
+		}
+
+		if (!isStreaming)
+		{
+			ctx.fireChannelRead(msg);
+			return;
+		}
+
+		if (msg instanceof LastHttpContent)
+		{
+			isStreaming = false;
+		}
+
+		ChannelHandlerContext aggregator = ctx.pipeline().context(HttpObjectAggregator.class);
+		(aggregator != null ? aggregator : ctx).fireChannelRead(msg);
+	}
+}
@@ -0,0 +1,133 @@
+/*
+    Copyright 2014, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package io.nsxtnet.pipeline;
+
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.FullHttpRequest;
+
+/**
+ * The body of a streaming upload (see StreamingUploadController), as it is being received.
+ * Pausing it stops reading from the connection (turns autoRead off, see ReadThrottle), so
+ * the client is held back by TCP flow control until it is resumed.
+ *
+ * @author kosh
+ * @since Dec 28, 2014
+ */
+public class UploadStream
+{
+	private final Channel channel;
+	private final MessageContext context;
+	private final FullHttpRequest httpRequest;
+	private StreamingUploadController controller;
+	private long receivedBytes = 0L;
+	private boolean isFailed = false;
+
+	UploadStream(Channel channel, MessageContext context, FullHttpRequest httpRequest)
+	{
+		super();
+		this.channel = channel;
+		this.context = context;
+		this.httpRequest = httpRequest;
+	}
+
+	/**
+	 * Stops reading the body until resume() is called. Chunks already read are still
+	 * delivered. The stream is resumed once the body is complete.
+	 */
+	public void pause()
+	{
+		ReadThrottle.of(channel).suspend(ReadThrottle.UPLOAD_PAUSED);
+	}
+
+	/**
+	 * Continues reading the body, unless the connection is held back for another reason,
+	 * e.g. responses piling up. May be called from any thread.
+	 */
+	public void resume()
+	{
+		ReadThrottle.of(channel).resume(ReadThrottle.UPLOAD_PAUSED);
+	}
+
+	public boolean isPaused()
+	{
+		return ReadThrottle.of(channel).isSuspended(ReadThrottle.UPLOAD_PAUSED);
+	}
+
+	/**
+	 * @return the number of body bytes received so far.
+	 */
+	public long getReceivedBytes()
+	{
+		return receivedBytes;
+	}
+
+	public Channel getChannel()
+	{
+		return channel;
+	}
+
+
+	// SECTION: UTILITY - PACKAGE
+
+	MessageContext getContext()
+	{
+		return context;
+	}
+
+	/**
+	 * @return the request, without a body, that is processed once the body is complete.
+	 */
+	FullHttpRequest getHttpRequest()
+	{
+		return httpRequest;
+	}
+
+	StreamingUploadController getController()
+	{
+		return controller;
+	}
+
+	void setController(StreamingUploadController controller)
+	{
+		this.controller = controller;
+	}
+
+	void addReceivedBytes(int bytes)
+	{
+		receivedBytes += bytes;
+	}
+
+	boolean isFailed()
+	{
+		return isFailed;
+	}
+
+	/**
+	 * Notifies the controller, if the upload got that far, once. The rest of the body is discarded.
+	 */
+	void fail(Throwable cause)
+	{
+		if (isFailed) return;
+
+		isFailed = true;
+		resume();
+
+		if (controller != null)
+		{
+			controller.onUploadFailed(context.getRequest(), cause);
+		}
+	}
+}
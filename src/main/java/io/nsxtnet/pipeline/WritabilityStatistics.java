@@ -0,0 +1,88 @@
+/*
+    Copyright 2014, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package io.nsxtnet.pipeline;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelOutboundBuffer;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Tracks the connections blocked on writability: those whose outbound buffer crossed the
+ * high water mark and hasn't drained below the low one yet. Reading new requests from them
+ * is suspended meanwhile, and chunked responses wait for the client (see ChunkedWriteHandler).
+ *
+ * @author kosh
+ * @since Dec 31, 2014
+ */
+public class WritabilityStatistics
+{
+	private final Set<Channel> blockedChannels = Collections.newSetFromMap(new ConcurrentHashMap<Channel, Boolean>());
+	private final LongAdder blockCount = new LongAdder();
+
+	void blocked(Channel channel)
+	{
+		if (blockedChannels.add(channel))
+		{
+			blockCount.increment();
+		}
+	}
+
+	void unblocked(Channel channel)
+	{
+		blockedChannels.remove(channel);
+	}
+
+	/**
+	 * @return the number of connections currently blocked on writability.
+	 */
+	public int getBlockedConnectionCount()
+	{
+		return blockedChannels.size();
+	}
+
+	/**
+	 * @return the number of times a connection became blocked on writability.
+	 */
+	public long getBlockCount()
+	{
+		return blockCount.sum();
+	}
+
+	/**
+	 * @return the bytes queued for the currently blocked connections, not yet written to
+	 * the socket. An estimate, as they are written meanwhile.
+	 */
+	public long getQueuedBytes()
+	{
+		long bytes = 0L;
+
+		for (Channel channel : blockedChannels)
+		{
+			ChannelOutboundBuffer buffer = channel.unsafe().outboundBuffer();
+
+			if (buffer != null)
+			{
+				bytes += buffer.totalPendingWriteBytes();
+			}
+		}
+
+		return bytes;
+	}
+}
@@ -0,0 +1,157 @@
+/*
+    Copyright 2014, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package io.nsxtnet.response;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.HttpChunkedInput;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.stream.ChunkedInput;
+import io.netty.handler.stream.ChunkedStream;
+import io.nsxtnet.http.Response;
+import io.nsxtnet.util.HttpSpecification;
+
+import java.io.InputStream;
+import java.util.Iterator;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The bodies a streaming download route (see RouteBuilder.useStreamingDownload()) may
+ * return to be written chunk by chunk, rather than serialized: a ChunkedInput, an
+ * InputStream or an Iterator of chunks (see IteratorChunkedInput).
+ *
+ * <p/>A ChunkedInput of a live stream (e.g. of events) may return null from readChunk() while
+ * it has nothing to send, and call ChunkedWriteHandler.resumeTransfer() once it has.
+ *
+ * @author kosh
+ * @since Dec 29, 2014
+ */
+public final class ChunkedBodies
+{
+	private static final Logger log = LoggerFactory.getLogger(ChunkedBodies.class);
+
+	private ChunkedBodies()
+	{
+		// prevents instantiation.
+	}
+
+	/**
+	 * @return true if the response is of a streaming download route, has a body to stream
+	 * and may have a body at all (e.g. isn't a 304).
+	 */
+	public static boolean isStreamed(Response response)
+	{
+		return (response.isStreamingDownload()
+			&& isChunked(response.getBody())
+			&& HttpSpecification.isContentAllowed(response));
+	}
+
+	public static boolean isChunked(Object body)
+	{
+		return (body instanceof ChunkedInput
+			|| body instanceof InputStream
+			|| body instanceof Iterator);
+	}
+
+	/**
+	 * @param body a body for which isChunked() is true.
+	 * @return the body as HTTP chunks, ending with a LastHttpContent.
+	 */
+	@SuppressWarnings("unchecked")
+	public static ChunkedInput<HttpContent> toHttpChunkedInput(Object body)
+	{
+		if (body instanceof HttpChunkedInput) return (HttpChunkedInput) body;
+
+		if (body instanceof ChunkedInput) return new HttpChunks((ChunkedInput<ByteBuf>) body);
+
+		if (body instanceof InputStream) return new HttpChunks(new ChunkedStream((InputStream) body));
+
+		return new HttpChunks(new IteratorChunkedInput((Iterator<?>) body));
+	}
+
+	/**
+	 * Closes a body that won't be written after all, e.g. when it's replaced by an error.
+	 */
+	public static void close(Object body)
+	{
+		try
+		{
+			if (body instanceof ChunkedInput)
+			{
+				((ChunkedInput<?>) body).close();
+			}
+			else if (body instanceof AutoCloseable)
+			{
+				((AutoCloseable) body).close();
+			}
+		}
+		catch (Exception e)
+		{
+			log.warn("Failed to close response body", e);
+		}
+	}
+
+	/**
+	 * An HttpChunkedInput that lets the input return null while it has no chunk ready,
+	 * rather than failing on it.
+	 */
+	private static final class HttpChunks
+	implements ChunkedInput<HttpContent>
+	{
+		private final ChunkedInput<ByteBuf> input;
+		private boolean isLastChunkSent = false;
+
+		public HttpChunks(ChunkedInput<ByteBuf> input)
+		{
+			super();
+			this.input = input;
+		}
+
+		@Override
+		public boolean isEndOfInput()
+		throws Exception
+		{
+			return (input.isEndOfInput() && isLastChunkSent);
+		}
+
+		@Override
+		public void close()
+		throws Exception
+		{
+			input.close();
+		}
+
+		@Override
+		public HttpContent readChunk(ChannelHandlerContext ctx)
+		throws Exception
+		{
+			if (input.isEndOfInput())
+			{
+				if (isLastChunkSent) return null;
+
+				isLastChunkSent = true;
+				return LastHttpContent.EMPTY_LAST_CONTENT;
+			}
+
+			ByteBuf chunk = input.readChunk(ctx);
+			return (chunk != null ? new DefaultHttpContent(chunk) : null);
+		}
+	}
+}
@@ -7,75 +7,265 @@ import static io.netty.handler.codec.http.HttpHeaders.Names.CONNECTION;
 import static io.netty.handler.codec.http.HttpHeaders.Names.CONTENT_LENGTH;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpResponse;
 import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpResponse;
+import io.netty.util.CharsetUtil;
 import io.nsxtnet.contenttype.ContentType;
 import io.nsxtnet.http.Request;
 import io.nsxtnet.http.Response;
 import io.nsxtnet.util.HttpSpecification;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+
 /**
  * @author toddf
  * @since Aug 26, 2010
  */
 public class DefaultHttpResponseWriter implements HttpResponseWriter
 {
+	private ResponseCompressor compressor;
+	private FileResponseWriter fileWriter;
+
+	public DefaultHttpResponseWriter()
+	{
+		this(null);
+	}
+
+	/**
+	 * @param compressor compresses response bodies, if the client accepts it. May be null for none.
+	 */
+	public DefaultHttpResponseWriter(ResponseCompressor compressor)
+	{
+		this(compressor, new OpenFileCache());
+	}
+
+	/**
+	 * @param compressor compresses response bodies, if the client accepts it. May be null for none.
+	 * @param openFiles keeps the files of file responses open.
+	 */
+	public DefaultHttpResponseWriter(ResponseCompressor compressor, OpenFileCache openFiles)
+	{
+		super();
+		this.compressor = compressor;
+		this.fileWriter = new FileResponseWriter(openFiles);
+	}
+
+	public ResponseCompressor getCompressor()
+	{
+		return compressor;
+	}
+
+	public void setCompressor(ResponseCompressor compressor)
+	{
+		this.compressor = compressor;
+	}
+
+	public FileResponseWriter getFileWriter()
+	{
+		return fileWriter;
+	}
+
+	public void setFileWriter(FileResponseWriter fileWriter)
+	{
+		this.fileWriter = fileWriter;
+	}
+
 	@Override
-	public void write(ChannelHandlerContext ctx, Request request, Response response)
+	public ChannelFuture write(ChannelHandlerContext ctx, Request request, Response response)
 	{
-		FullHttpResponse httpResponse = null;
-		if (response.hasBody() && HttpSpecification.isContentAllowed(response))
+		if (ChunkedBodies.isStreamed(response))
+		{
+			return writeChunked(ctx, request, response);
+		}
+
+		if (FileResponseWriter.isFile(response.getBody()))
 		{
-			// If the response body already contains a ChannelBuffer, use it.
-			if (ByteBuf.class.isAssignableFrom(response.getBody().getClass()))
+			return fileWriter.write(ctx, request, response);
+		}
+
+		ByteBuf content = Unpooled.EMPTY_BUFFER;
+		FullHttpResponse httpResponse;
+
+		try
+		{
+			if (response.hasBody() && HttpSpecification.isContentAllowed(response))
 			{
-				httpResponse = new DefaultFullHttpResponse(request.getHttpVersion(),
-						response.getResponseStatus(),
-						Unpooled.wrappedBuffer((ByteBuf) response.getBody()));
+				// If the response body already contains a ByteBuf, it's written as is. The
+				// response keeps its own reference; the channel releases this one.
+				if (response.getBody() instanceof ByteBuf)
+				{
+					content = ((ByteBuf) response.getBody()).retain();
+				}
+				else // response body is assumed to be a string (e.g. raw JSON or XML).
+				{
+					content = encode(ctx.alloc(), response.getBody().toString());
+				}
 			}
-			else // response body is assumed to be a string (e.g. raw JSON or XML).
+
+			httpResponse = new DefaultFullHttpResponse(request.getHttpVersion(), response.getResponseStatus(), content);
+			addHeaders(response, httpResponse);
+
+			// Before the Content-Length is set, which is then that of the compressed body.
+			if (compressor != null && content.isReadable())
 			{
-				httpResponse = new DefaultFullHttpResponse(request.getHttpVersion(),
-						response.getResponseStatus(),
-						Unpooled.wrappedBuffer(response.getBody().toString().getBytes(ContentType.CHARSET)));
+				ByteBuf compressed = compressor.compress(ctx.alloc(), request, response, content, httpResponse.headers());
+
+				if (compressed != content)
+				{
+					content = compressed;
+					FullHttpResponse compressedResponse = new DefaultFullHttpResponse(request.getHttpVersion(), response.getResponseStatus(), compressed);
+					compressedResponse.headers().set(httpResponse.headers());
+					httpResponse = compressedResponse;
+				}
 			}
 		}
+		catch (RuntimeException e)
+		{
+			// Not handed to the channel yet, so not released by it either.
+			content.release();
+			throw e;
+		}
 
-		addHeaders(response, httpResponse);
+		// Replaces any Content-Length copied from the response, which is that of the body
+		// before compression.
+		if (HttpSpecification.isContentLengthAllowed(response))
+		{
+			httpResponse.headers().set(CONTENT_LENGTH, String.valueOf(httpResponse.content().readableBytes()));
+		}
 
 		if (request.isKeepAlive())
 	  	{
-	  		// Add 'Content-Length' header only for a keep-alive connection.
-			if (HttpSpecification.isContentLengthAllowed(response))
-	  		{
-				httpResponse.headers().set(CONTENT_LENGTH, String.valueOf(httpResponse.content().readableBytes()));
-	  		}
-
 			// Support "Connection: Keep-Alive" for HTTP 1.0 requests.
 			if (request.isHttpVersion1_0()) 
 			{
 				httpResponse.headers().add(CONNECTION, "Keep-Alive");
 			}
 
-			ctx.write(httpResponse).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+			return ctx.write(httpResponse).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
 	  	}
 		else
 		{
 			httpResponse.headers().set(CONNECTION, "close");
 
 			// Close the connection as soon as the message is sent.
-			ctx.write(httpResponse).addListener(ChannelFutureListener.CLOSE);
+			return ctx.write(httpResponse).addListener(ChannelFutureListener.CLOSE);
+		}
+	}
+
+	/**
+	 * Writes the head, then the body chunk by chunk through the ChunkedWriteHandler, which
+	 * reads the next chunk only while the channel is writable, and closes the body when done.
+	 * HTTP/1.0 has no chunked transfer coding, so there the end of the body is marked by
+	 * closing the connection.
+	 */
+	private ChannelFuture writeChunked(ChannelHandlerContext ctx, Request request, Response response)
+	{
+		HttpResponse httpResponse = new DefaultHttpResponse(request.getHttpVersion(), response.getResponseStatus());
+		addHeaders(response, httpResponse);
+		httpResponse.headers().remove(CONTENT_LENGTH);
+		boolean isKeepAlive = (request.isKeepAlive() && !request.isHttpVersion1_0());
+
+		if (!request.isHttpVersion1_0())
+		{
+			HttpHeaders.setTransferEncodingChunked(httpResponse);
 		}
+
+		if (!isKeepAlive)
+		{
+			httpResponse.headers().set(CONNECTION, "close");
+		}
+
+		ctx.write(httpResponse).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+		return ctx.writeAndFlush(ChunkedBodies.toHttpChunkedInput(response.getBody()))
+			.addListener(isKeepAlive ? ChannelFutureListener.CLOSE_ON_FAILURE : ChannelFutureListener.CLOSE);
 	}
+
+	/**
+	 * Encodes the body into a buffer of the channel's allocator (pooled and direct, by
+	 * default), sized for its UTF-8 length rather than the worst case.
+	 */
+	private static ByteBuf encode(ByteBufAllocator alloc, String body)
+	{
+		int maxLength = utf8Length(body);
+		ByteBuf content = alloc.buffer(maxLength);
+
+		try
+		{
+			CharsetEncoder encoder = CharsetUtil.getEncoder(ContentType.CHARSET);
+			ByteBuffer dst = content.internalNioBuffer(0, maxLength);
+			int start = dst.position();
+			CoderResult result = encoder.encode(CharBuffer.wrap(body), dst, true);
+
+			if (!result.isUnderflow()) result.throwException();
+
+			result = encoder.flush(dst);
+
+			if (!result.isUnderflow()) result.throwException();
+
+			content.writerIndex(dst.position() - start);
+			return content;
+		}
+		catch (CharacterCodingException e)
+		{
+			content.release();
+			throw new IllegalStateException(e);
+		}
+		catch (RuntimeException e)
+		{
+			content.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return the UTF-8 encoded length of the string. An upper bound, if it contains unpaired surrogates.
+	 */
+	private static int utf8Length(String string)
+	{
+		int length = string.length();
+		int bytes = length;
+
+		for (int i = 0; i < length; i++)
+		{
+			char c = string.charAt(i);
+
+			if (c < 0x80) continue;
+
+			if (c < 0x800)
+			{
+				bytes += 1;
+			}
+			else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(string.charAt(i + 1)))
+			{
+				bytes += 2;
+				i++;
+			}
+			else
+			{
+				bytes += 2;
+			}
+		}
+
+		return bytes;
+	}
+
 	/**
      * @param response
      * @param httpResponse
      */
-    private void addHeaders(Response response, HttpResponse httpResponse)
+    static void addHeaders(Response response, HttpResponse httpResponse)
     {
     	for (String name : response.getHeaderNames())
     	{
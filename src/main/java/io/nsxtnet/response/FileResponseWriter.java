@@ -0,0 +1,421 @@
+/*
+    Copyright 2014, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package io.nsxtnet.response;
+
+import static io.netty.handler.codec.http.HttpHeaders.Names.ACCEPT_RANGES;
+import static io.netty.handler.codec.http.HttpHeaders.Names.CONNECTION;
+import static io.netty.handler.codec.http.HttpHeaders.Names.CONTENT_LENGTH;
+import static io.netty.handler.codec.http.HttpHeaders.Names.CONTENT_RANGE;
+import static io.netty.handler.codec.http.HttpHeaders.Names.CONTENT_TYPE;
+import static io.netty.handler.codec.http.HttpHeaders.Names.ETAG;
+import static io.netty.handler.codec.http.HttpHeaders.Names.IF_MODIFIED_SINCE;
+import static io.netty.handler.codec.http.HttpHeaders.Names.IF_NONE_MATCH;
+import static io.netty.handler.codec.http.HttpHeaders.Names.IF_RANGE;
+import static io.netty.handler.codec.http.HttpHeaders.Names.LAST_MODIFIED;
+import static io.netty.handler.codec.http.HttpHeaders.Names.RANGE;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.HttpChunkedInput;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.stream.ChunkedNioFile;
+import io.nsxtnet.exception.NotFoundException;
+import io.nsxtnet.http.Request;
+import io.nsxtnet.http.Response;
+import io.nsxtnet.response.OpenFileCache.OpenFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLConnection;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
+/**
+ * Writes a response whose body is a file (a java.nio.file.Path or java.io.File) straight
+ * from disk: with sendfile (a DefaultFileRegion) on plain connections, or in chunks read
+ * into buffers (a ChunkedNioFile) where the bytes have to pass through the pipeline, i.e.
+ * over SSL.
+ *
+ * <p/>Sets ETag (from the size and modification time) and Last-Modified, unless the action
+ * did, and Accept-Ranges. Answers If-None-Match and If-Modified-Since with 304 Not Modified,
+ * and a single byte Range (subject to If-Range) with 206 Partial Content, or 416 if it is
+ * beyond the end of the file. Multiple ranges are answered with the whole file. Only 200
+ * responses to GET requests are made conditional or partial.
+ *
+ * @author kosh
+ * @since Dec 30, 2014
+ */
+public class FileResponseWriter
+implements HttpResponseWriter
+{
+	private static final int CHUNK_SIZE = 8192;
+	private static final String BYTES_UNIT = "bytes=";
+	private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+	private static final DateTimeFormatter HTTP_DATE_FORMAT = DateTimeFormatter
+		.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US)
+		.withZone(ZoneOffset.UTC);
+
+	// The range to send is the whole file.
+	private static final long[] NO_RANGE = null;
+	private static final long[] UNSATISFIABLE = new long[0];
+
+	private OpenFileCache openFiles;
+
+	public FileResponseWriter()
+	{
+		this(new OpenFileCache());
+	}
+
+	public FileResponseWriter(OpenFileCache openFiles)
+	{
+		super();
+		this.openFiles = openFiles;
+	}
+
+	public OpenFileCache getOpenFileCache()
+	{
+		return openFiles;
+	}
+
+	/**
+	 * @return true if the body is a file to be sent by a FileResponseWriter.
+	 */
+	public static boolean isFile(Object body)
+	{
+		return (body instanceof Path || body instanceof File);
+	}
+
+	/**
+	 * Throws a NotFoundException, before anything is written, if there's no such file.
+	 */
+	@Override
+	public ChannelFuture write(ChannelHandlerContext ctx, Request request, Response response)
+	{
+		Path path = toPath(response.getBody());
+		BasicFileAttributes attributes = readAttributes(path);
+		long size = attributes.size();
+		long lastModified = attributes.lastModifiedTime().toMillis();
+
+		HttpResponse httpResponse = new DefaultHttpResponse(request.getHttpVersion(), response.getResponseStatus());
+		DefaultHttpResponseWriter.addHeaders(response, httpResponse);
+		HttpHeaders headers = httpResponse.headers();
+
+		if (!headers.contains(ETAG))
+		{
+			headers.set(ETAG, "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(size) + "\"");
+		}
+
+		if (!headers.contains(LAST_MODIFIED))
+		{
+			headers.set(LAST_MODIFIED, HTTP_DATE_FORMAT.format(Instant.ofEpochMilli(lastModified)));
+		}
+
+		if (!headers.contains(CONTENT_TYPE))
+		{
+			headers.set(CONTENT_TYPE, getContentType(path));
+		}
+
+		headers.set(ACCEPT_RANGES, "bytes");
+		long offset = 0L;
+		long length = size;
+
+		if (HttpResponseStatus.OK.equals(response.getResponseStatus())
+			&& HttpMethod.GET.equals(request.getHttpMethod()))
+		{
+			String etag = headers.get(ETAG);
+
+			if (isNotModified(request, etag, lastModified))
+			{
+				setStatus(response, httpResponse, HttpResponseStatus.NOT_MODIFIED);
+				headers.remove(CONTENT_TYPE);
+				length = -1L;
+			}
+			else
+			{
+				long[] range = getRange(request, etag, lastModified, size);
+
+				if (range == UNSATISFIABLE)
+				{
+					setStatus(response, httpResponse, HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+					headers.set(CONTENT_RANGE, "bytes */" + size);
+					length = 0L;
+				}
+				else if (range != NO_RANGE)
+				{
+					setStatus(response, httpResponse, HttpResponseStatus.PARTIAL_CONTENT);
+					headers.set(CONTENT_RANGE, "bytes " + range[0] + "-" + range[1] + "/" + size);
+					offset = range[0];
+					length = range[1] - range[0] + 1;
+				}
+			}
+		}
+
+		// Opened before anything is written, so that failing to is reported as usual.
+		Object body = (length > 0 ? openBody(ctx, path, attributes, offset, length) : null);
+
+		if (length >= 0)
+		{
+			headers.set(CONTENT_LENGTH, String.valueOf(length));
+		}
+
+		boolean isKeepAlive = request.isKeepAlive();
+
+		if (!isKeepAlive)
+		{
+			headers.set(CONNECTION, "close");
+		}
+		else if (request.isHttpVersion1_0())
+		{
+			headers.add(CONNECTION, "Keep-Alive");
+		}
+
+		ctx.write(httpResponse).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+		ChannelFuture future;
+
+		if (body instanceof HttpChunkedInput)
+		{
+			future = ctx.writeAndFlush(body);
+		}
+		else
+		{
+			if (body != null)
+			{
+				ctx.write(body).addListener(ChannelFutureListener.CLOSE_ON_FAILURE);
+			}
+
+			future = ctx.write(LastHttpContent.EMPTY_LAST_CONTENT);
+		}
+
+		return future.addListener(isKeepAlive ? ChannelFutureListener.CLOSE_ON_FAILURE : ChannelFutureListener.CLOSE);
+	}
+
+
+	// SECTION: UTILITY - PRIVATE
+
+	private static Path toPath(Object body)
+	{
+		return (body instanceof File ? ((File) body).toPath() : (Path) body).toAbsolutePath();
+	}
+
+	private static BasicFileAttributes readAttributes(Path path)
+	{
+		try
+		{
+			BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+
+			if (attributes.isRegularFile()) return attributes;
+		}
+		catch (NoSuchFileException e)
+		{
+			// fall through.
+		}
+		catch (IOException e)
+		{
+			throw new IllegalStateException(e);
+		}
+
+		throw new NotFoundException("File not found: " + path.getFileName());
+	}
+
+	private static String getContentType(Path path)
+	{
+		String contentType = URLConnection.guessContentTypeFromName(path.getFileName().toString());
+		return (contentType != null ? contentType : DEFAULT_CONTENT_TYPE);
+	}
+
+	private static void setStatus(Response response, HttpResponse httpResponse, HttpResponseStatus status)
+	{
+		response.setResponseStatus(status);
+		httpResponse.setStatus(status);
+	}
+
+	/**
+	 * A FileRegion for sendfile, unless the bytes have to pass through an SslHandler. The
+	 * region shares a cached open file; the chunked input opens one of its own, as it reads
+	 * from the file's current position.
+	 */
+	private Object openBody(ChannelHandlerContext ctx, Path path, BasicFileAttributes attributes, long offset, long length)
+	{
+		try
+		{
+			if (ctx.pipeline().get(SslHandler.class) == null)
+			{
+				return new OpenFileRegion(openFiles.acquire(path, attributes), offset, length);
+			}
+
+			FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+			return new HttpChunkedInput(new ChunkedNioFile(channel, offset, length, CHUNK_SIZE));
+		}
+		catch (NoSuchFileException e)
+		{
+			throw new NotFoundException("File not found: " + path.getFileName());
+		}
+		catch (IOException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * If-None-Match takes precedence over If-Modified-Since.
+	 */
+	private static boolean isNotModified(Request request, String etag, long lastModified)
+	{
+		String ifNoneMatch = request.getHeader(IF_NONE_MATCH);
+
+		if (ifNoneMatch != null)
+		{
+			for (String tag : ifNoneMatch.split(","))
+			{
+				tag = tag.trim();
+
+				if ("*".equals(tag) || stripWeak(tag).equals(stripWeak(etag))) return true;
+			}
+
+			return false;
+		}
+
+		long ifModifiedSince = parseDate(request.getHeader(IF_MODIFIED_SINCE));
+		return (ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000);
+	}
+
+	/**
+	 * @return the first and last byte of the requested range, NO_RANGE if the whole file is
+	 * to be sent or UNSATISFIABLE.
+	 */
+	private static long[] getRange(Request request, String etag, long lastModified, long size)
+	{
+		String range = request.getHeader(RANGE);
+
+		if (range == null || !range.startsWith(BYTES_UNIT) || range.indexOf(',') >= 0) return NO_RANGE;
+
+		if (!isRangeCurrent(request.getHeader(IF_RANGE), etag, lastModified)) return NO_RANGE;
+
+		String spec = range.substring(BYTES_UNIT.length()).trim();
+		int dash = spec.indexOf('-');
+
+		if (dash < 0) return NO_RANGE;
+
+		try
+		{
+			long first;
+			long last;
+
+			if (dash == 0) // suffix range: the last N bytes.
+			{
+				long suffix = Long.parseLong(spec.substring(1));
+
+				if (suffix <= 0 || size == 0) return UNSATISFIABLE;
+
+				first = Math.max(0L, size - suffix);
+				last = size - 1;
+			}
+			else
+			{
+				first = Long.parseLong(spec.substring(0, dash));
+				last = (dash == spec.length() - 1 ? size - 1 : Math.min(size - 1, Long.parseLong(spec.substring(dash + 1))));
+
+				if (first >= size) return UNSATISFIABLE;
+
+				if (last < first) return NO_RANGE;
+			}
+
+			return new long[] {first, last};
+		}
+		catch (NumberFormatException e)
+		{
+			return NO_RANGE;
+		}
+	}
+
+	/**
+	 * If-Range is either a strong entity tag or a date, which must match the current one.
+	 */
+	private static boolean isRangeCurrent(String ifRange, String etag, long lastModified)
+	{
+		if (ifRange == null) return true;
+
+		ifRange = ifRange.trim();
+
+		if (ifRange.startsWith("\"") || ifRange.startsWith("W/"))
+		{
+			return (ifRange.equals(etag) && !etag.startsWith("W/"));
+		}
+
+		long date = parseDate(ifRange);
+		return (date >= 0 && date / 1000 == lastModified / 1000);
+	}
+
+	private static String stripWeak(String etag)
+	{
+		return (etag.startsWith("W/") ? etag.substring(2) : etag);
+	}
+
+	/**
+	 * @return the date in milliseconds, or -1 if there is none or it isn't valid.
+	 */
+	private static long parseDate(String value)
+	{
+		if (value == null) return -1L;
+
+		try
+		{
+			return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+		}
+		catch (DateTimeParseException e)
+		{
+			return -1L;
+		}
+	}
+
+	/**
+	 * Releases its reference to the shared open file, rather than closing it, when done.
+	 */
+	private static final class OpenFileRegion
+	extends DefaultFileRegion
+	{
+		private final OpenFile file;
+
+		public OpenFileRegion(OpenFile file, long position, long count)
+		{
+			super(file.getChannel(), position, count);
+			this.file = file;
+		}
+
+		@Override
+		protected void deallocate()
+		{
+			file.release();
+		}
+	}
+}
@@ -3,6 +3,7 @@
  */
 package io.nsxtnet.response;
 
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
 import io.nsxtnet.http.Request;
 import io.nsxtnet.http.Response;
@@ -13,5 +14,8 @@ import io.nsxtnet.http.Response;
  */
 public interface HttpResponseWriter
 {
-	public void write(ChannelHandlerContext ctx, Request request, Response response);
+	/**
+	 * @return the future of the write, done once the whole response is written.
+	 */
+	public ChannelFuture write(ChannelHandlerContext ctx, Request request, Response response);
 }
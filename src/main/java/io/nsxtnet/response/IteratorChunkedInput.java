@@ -0,0 +1,90 @@
+/*
+    Copyright 2014, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package io.nsxtnet.response;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.stream.ChunkedInput;
+import io.nsxtnet.contenttype.ContentType;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+/**
+ * A ChunkedInput over the elements of an Iterator, each of which becomes a chunk: byte[]
+ * and ByteBuffer are wrapped, ByteBufs are written (and released) as they are, anything else
+ * is written as its toString() in UTF-8. The iterator is only advanced when the channel can
+ * take another chunk, so it may produce them lazily, e.g. from a database cursor.
+ *
+ * <p/>If the iterator is AutoCloseable, it is closed with the input.
+ *
+ * @author kosh
+ * @since Dec 29, 2014
+ */
+public class IteratorChunkedInput
+implements ChunkedInput<ByteBuf>
+{
+	private final Iterator<?> iterator;
+	private boolean isClosed = false;
+
+	public IteratorChunkedInput(Iterator<?> iterator)
+	{
+		super();
+		this.iterator = iterator;
+	}
+
+	@Override
+	public boolean isEndOfInput()
+	throws Exception
+	{
+		return (isClosed || !iterator.hasNext());
+	}
+
+	@Override
+	public void close()
+	throws Exception
+	{
+		if (isClosed) return;
+
+		isClosed = true;
+
+		if (iterator instanceof AutoCloseable)
+		{
+			((AutoCloseable) iterator).close();
+		}
+	}
+
+	@Override
+	public ByteBuf readChunk(ChannelHandlerContext ctx)
+	throws Exception
+	{
+		if (isEndOfInput()) return null;
+
+		Object chunk = iterator.next();
+
+		if (chunk == null) return Unpooled.EMPTY_BUFFER;
+
+		if (chunk instanceof ByteBuf) return (ByteBuf) chunk;
+
+		if (chunk instanceof byte[]) return Unpooled.wrappedBuffer((byte[]) chunk);
+
+		if (chunk instanceof ByteBuffer) return Unpooled.wrappedBuffer((ByteBuffer) chunk);
+
+		byte[] bytes = chunk.toString().getBytes(ContentType.CHARSET);
+		return ctx.alloc().buffer(bytes.length).writeBytes(bytes);
+	}
+}
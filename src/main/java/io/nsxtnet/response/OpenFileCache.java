@@ -0,0 +1,195 @@
+/*
+    Copyright 2014, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package io.nsxtnet.response;
+
+import io.netty.util.AbstractReferenceCounted;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the most recently sent files open, so that sending one again costs a stat() rather
+ * than an open() and close(). A file that changed since it was opened (size or modification
+ * time) is opened anew. Files are read with positional transfers, so an open file is shared
+ * by all the responses sending it, and only closed once the last of them is written.
+ *
+ * <p/>Safe for use by all the I/O threads. A maximum of zero disables caching: each response
+ * then opens the file for itself.
+ *
+ * @author kosh
+ * @since Dec 30, 2014
+ */
+public class OpenFileCache
+{
+	public static final int DEFAULT_MAX_OPEN_FILES = 256;
+
+	private static final Logger log = LoggerFactory.getLogger(OpenFileCache.class);
+
+	private final int maxOpenFiles;
+	private final Map<Path, OpenFile> files;
+
+	public OpenFileCache()
+	{
+		this(DEFAULT_MAX_OPEN_FILES);
+	}
+
+	/**
+	 * @param maxOpenFiles the number of files kept open, least recently sent ones closed first.
+	 */
+	public OpenFileCache(int maxOpenFiles)
+	{
+		super();
+		this.maxOpenFiles = maxOpenFiles;
+		this.files = new LinkedHashMap<Path, OpenFile>(16, 0.75f, true);
+	}
+
+	public int getMaxOpenFiles()
+	{
+		return maxOpenFiles;
+	}
+
+	/**
+	 * @return the number of files currently cached.
+	 */
+	public synchronized int size()
+	{
+		return files.size();
+	}
+
+	/**
+	 * Closes the cached files, once responses still sending them are done.
+	 */
+	public synchronized void clear()
+	{
+		for (OpenFile file : files.values())
+		{
+			file.release();
+		}
+
+		files.clear();
+	}
+
+
+	// SECTION: UTILITY - PACKAGE
+
+	/**
+	 * @param path an absolute path.
+	 * @param attributes the file's current attributes, to tell whether a cached file changed.
+	 * @return the open file, retained for the caller, who must release() it when done.
+	 */
+	OpenFile acquire(Path path, BasicFileAttributes attributes)
+	throws IOException
+	{
+		long lastModified = attributes.lastModifiedTime().toMillis();
+
+		if (maxOpenFiles <= 0)
+		{
+			return new OpenFile(path, attributes.size(), lastModified);
+		}
+
+		synchronized (this)
+		{
+			OpenFile file = files.get(path);
+
+			if (file != null && file.getSize() == attributes.size() && file.getLastModified() == lastModified)
+			{
+				return (OpenFile) file.retain();
+			}
+		}
+
+		// Opened outside the lock. If two threads race, the later one's file is the one cached.
+		OpenFile opened = new OpenFile(path, attributes.size(), lastModified);
+
+		synchronized (this)
+		{
+			OpenFile stale = files.put(path, opened);
+
+			if (stale != null)
+			{
+				stale.release();
+			}
+
+			if (files.size() > maxOpenFiles)
+			{
+				Entry<Path, OpenFile> eldest = files.entrySet().iterator().next();
+				files.remove(eldest.getKey());
+				eldest.getValue().release();
+			}
+
+			// One reference for the cache, one for the caller.
+			return (OpenFile) opened.retain();
+		}
+	}
+
+	/**
+	 * An open file, closed when its last reference is released.
+	 */
+	static final class OpenFile
+	extends AbstractReferenceCounted
+	{
+		private final Path path;
+		private final FileChannel channel;
+		private final long size;
+		private final long lastModified;
+
+		private OpenFile(Path path, long size, long lastModified)
+		throws IOException
+		{
+			super();
+			this.path = path;
+			this.channel = FileChannel.open(path, StandardOpenOption.READ);
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+
+		public FileChannel getChannel()
+		{
+			return channel;
+		}
+
+		public long getSize()
+		{
+			return size;
+		}
+
+		public long getLastModified()
+		{
+			return lastModified;
+		}
+
+		@Override
+		protected void deallocate()
+		{
+			try
+			{
+				channel.close();
+			}
+			catch (IOException e)
+			{
+				log.warn("Failed to close " + path, e);
+			}
+		}
+	}
+}
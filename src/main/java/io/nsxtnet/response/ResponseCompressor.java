@@ -0,0 +1,377 @@
+/*
+    Copyright 2014, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package io.nsxtnet.response;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.util.concurrent.FastThreadLocal;
+import io.nsxtnet.http.Request;
+import io.nsxtnet.http.Response;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses complete response bodies with gzip or deflate, as negotiated from the
+ * request's Accept-Encoding header. Bodies smaller than the threshold, bodies of media
+ * types that are compressed already (images, archives, ...) and responses of routes that
+ * opted out (see RouteBuilder.noCompression()) are sent as they are, as are bodies that
+ * wouldn't get any smaller.
+ *
+ * <p/>The body is compressed before the response is written, so its Content-Length is
+ * that of the compressed body. Each thread (i.e. each event loop) reuses its own Deflaters.
+ *
+ * @author kosh
+ * @since Dec 26, 2014
+ */
+public class ResponseCompressor
+{
+	// SECTION: CONSTANTS
+
+	public static final int DEFAULT_THRESHOLD = 1024;
+	public static final int DEFAULT_LEVEL = 6;
+
+	/**
+	 * Media types sent uncompressed by default. A trailing '*' matches any subtype.
+	 */
+	public static final List<String> DEFAULT_UNCOMPRESSED_MEDIA_TYPES = Collections.unmodifiableList(Arrays.asList(
+		"image/*", "audio/*", "video/*", "font/woff", "font/woff2", "application/font-woff",
+		"application/zip", "application/gzip", "application/x-gzip", "application/x-compress",
+		"application/x-bzip2", "application/x-7z-compressed", "application/x-rar-compressed",
+		"application/pdf"));
+
+	private static final String GZIP = "gzip";
+	private static final String DEFLATE = "deflate";
+	private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+	private static final int GZIP_TRAILER_LENGTH = 8;
+
+
+	// SECTION: INSTANCE VARIABLES
+
+	private final int threshold;
+	private final int level;
+	private final List<String> uncompressedMediaTypes = new ArrayList<String>();
+
+	// Raw deflate, framed as gzip by hand.
+	private final FastThreadLocal<Deflater> gzipDeflater = new FastThreadLocal<Deflater>()
+	{
+		@Override
+		protected Deflater initialValue()
+		{
+			return new Deflater(level, true);
+		}
+	};
+
+	// The "deflate" content coding is the zlib format.
+	private final FastThreadLocal<Deflater> zlibDeflater = new FastThreadLocal<Deflater>()
+	{
+		@Override
+		protected Deflater initialValue()
+		{
+			return new Deflater(level, false);
+		}
+	};
+
+	private final FastThreadLocal<CRC32> crc = new FastThreadLocal<CRC32>()
+	{
+		@Override
+		protected CRC32 initialValue()
+		{
+			return new CRC32();
+		}
+	};
+
+	private final FastThreadLocal<byte[]> inputBuffer = new FastThreadLocal<byte[]>()
+	{
+		@Override
+		protected byte[] initialValue()
+		{
+			return new byte[8192];
+		}
+	};
+
+
+	// SECTION: CONSTRUCTORS
+
+	public ResponseCompressor()
+	{
+		this(DEFAULT_THRESHOLD, DEFAULT_LEVEL, DEFAULT_UNCOMPRESSED_MEDIA_TYPES);
+	}
+
+	/**
+	 * @param threshold the smallest body, in bytes, that is compressed.
+	 * @param level the compression level, 1 (fastest) to 9 (smallest).
+	 * @param uncompressedMediaTypes media types never compressed, e.g. "image/*".
+	 */
+	public ResponseCompressor(int threshold, int level, List<String> uncompressedMediaTypes)
+	{
+		super();
+
+		if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION)
+		{
+			throw new IllegalArgumentException("compression level must be 1..9: " + level);
+		}
+
+		this.threshold = Math.max(0, threshold);
+		this.level = level;
+
+		for (String mediaType : uncompressedMediaTypes)
+		{
+			this.uncompressedMediaTypes.add(mediaType.trim().toLowerCase(Locale.US));
+		}
+	}
+
+
+	// SECTION: ACCESSORS
+
+	public int getThreshold()
+	{
+		return threshold;
+	}
+
+	public int getLevel()
+	{
+		return level;
+	}
+
+	public List<String> getUncompressedMediaTypes()
+	{
+		return Collections.unmodifiableList(uncompressedMediaTypes);
+	}
+
+
+	// SECTION: UTILITY - PUBLIC
+
+	/**
+	 * Compresses the content, if the response qualifies and the client accepts it, and
+	 * sets the Content-Encoding and Vary headers accordingly.
+	 *
+	 * @param alloc allocates the compressed body.
+	 * @param request
+	 * @param response
+	 * @param content the body. Released if compressed.
+	 * @param headers the headers of the outgoing response.
+	 * @return the compressed body, or the content as it was.
+	 */
+	public ByteBuf compress(ByteBufAllocator alloc, Request request, Response response, ByteBuf content, HttpHeaders headers)
+	{
+		if (!isCompressible(response, content, headers)) return content;
+
+		headers.add(HttpHeaders.Names.VARY, HttpHeaders.Names.ACCEPT_ENCODING);
+		String encoding = negotiate(request.getHeader(HttpHeaders.Names.ACCEPT_ENCODING));
+
+		if (encoding == null) return content;
+
+		ByteBuf compressed = deflate(alloc, content, GZIP.equals(encoding));
+
+		if (compressed.readableBytes() >= content.readableBytes())
+		{
+			compressed.release();
+			return content;
+		}
+
+		headers.set(HttpHeaders.Names.CONTENT_ENCODING, encoding);
+		content.release();
+		return compressed;
+	}
+
+
+	// SECTION: UTILITY - PRIVATE
+
+	private boolean isCompressible(Response response, ByteBuf content, HttpHeaders headers)
+	{
+		if (!response.isCompressed()
+			|| content.readableBytes() < threshold
+			|| content.readableBytes() == 0
+			|| headers.contains(HttpHeaders.Names.CONTENT_ENCODING))
+		{
+			return false;
+		}
+
+		return !isUncompressedMediaType(headers.get(HttpHeaders.Names.CONTENT_TYPE));
+	}
+
+	private boolean isUncompressedMediaType(String contentType)
+	{
+		if (contentType == null) return false;
+
+		int end = contentType.indexOf(';');
+		String mediaType = (end < 0 ? contentType : contentType.substring(0, end)).trim().toLowerCase(Locale.US);
+
+		for (String uncompressed : uncompressedMediaTypes)
+		{
+			if (uncompressed.endsWith("*")
+				? mediaType.startsWith(uncompressed.substring(0, uncompressed.length() - 1))
+				: mediaType.equals(uncompressed))
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * @return "gzip", "deflate" or null, preferring gzip when both are equally acceptable.
+	 */
+	static String negotiate(String acceptEncoding)
+	{
+		if (acceptEncoding == null) return null;
+
+		float gzip = -1f;
+		float deflate = -1f;
+		float any = -1f;
+
+		for (String coding : acceptEncoding.split(","))
+		{
+			String name = coding;
+			float q = 1f;
+			int semicolon = coding.indexOf(';');
+
+			if (semicolon >= 0)
+			{
+				name = coding.substring(0, semicolon);
+				q = parseQuality(coding.substring(semicolon + 1));
+			}
+
+			name = name.trim().toLowerCase(Locale.US);
+
+			if (GZIP.equals(name) || "x-gzip".equals(name))
+			{
+				gzip = Math.max(gzip, q);
+			}
+			else if (DEFLATE.equals(name))
+			{
+				deflate = Math.max(deflate, q);
+			}
+			else if ("*".equals(name))
+			{
+				any = q;
+			}
+		}
+
+		if (gzip < 0f) gzip = any;
+		if (deflate < 0f) deflate = any;
+
+		if (gzip > 0f && gzip >= deflate) return GZIP;
+		if (deflate > 0f) return DEFLATE;
+
+		return null;
+	}
+
+	private static float parseQuality(String parameters)
+	{
+		for (String parameter : parameters.split(";"))
+		{
+			int equals = parameter.indexOf('=');
+
+			if (equals >= 0 && "q".equals(parameter.substring(0, equals).trim()))
+			{
+				try
+				{
+					return Float.parseFloat(parameter.substring(equals + 1).trim());
+				}
+				catch (NumberFormatException e)
+				{
+					return 0f;
+				}
+			}
+		}
+
+		return 1f;
+	}
+
+	private ByteBuf deflate(ByteBufAllocator alloc, ByteBuf content, boolean isGzip)
+	{
+		int length = content.readableBytes();
+		byte[] input;
+		int offset;
+
+		if (content.hasArray())
+		{
+			input = content.array();
+			offset = content.arrayOffset() + content.readerIndex();
+		}
+		else
+		{
+			input = inputBufferFor(length);
+			offset = 0;
+			content.getBytes(content.readerIndex(), input, 0, length);
+		}
+
+		Deflater deflater = (isGzip ? gzipDeflater.get() : zlibDeflater.get());
+		ByteBuf out = alloc.heapBuffer(length / 2 + GZIP_HEADER.length + GZIP_TRAILER_LENGTH + 64);
+
+		try
+		{
+			if (isGzip)
+			{
+				out.writeBytes(GZIP_HEADER);
+			}
+
+			deflater.reset();
+			deflater.setInput(input, offset, length);
+			deflater.finish();
+
+			while (!deflater.finished())
+			{
+				if (!out.isWritable())
+				{
+					out.ensureWritable(out.capacity());
+				}
+
+				int written = deflater.deflate(out.array(), out.arrayOffset() + out.writerIndex(), out.writableBytes());
+				out.writerIndex(out.writerIndex() + written);
+			}
+
+			if (isGzip)
+			{
+				CRC32 checksum = crc.get();
+				checksum.reset();
+				checksum.update(input, offset, length);
+				out.writeInt(Integer.reverseBytes((int) checksum.getValue()));
+				out.writeInt(Integer.reverseBytes(length));
+			}
+
+			return out;
+		}
+		catch (RuntimeException e)
+		{
+			out.release();
+			throw e;
+		}
+	}
+
+	private byte[] inputBufferFor(int length)
+	{
+		byte[] buffer = inputBuffer.get();
+
+		if (buffer.length >= length) return buffer;
+
+		// Keep the per-thread buffer for typical bodies only.
+		if (length > 65536) return new byte[length];
+
+		buffer = new byte[Math.max(length, buffer.length * 2)];
+		inputBuffer.set(buffer);
+		return buffer;
+	}
+}
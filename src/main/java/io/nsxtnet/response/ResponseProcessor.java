@@ -15,9 +15,13 @@
 */
 package io.nsxtnet.response;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.nsxtnet.contenttype.MediaRange;
 import io.nsxtnet.http.Request;
 import io.nsxtnet.http.Response;
+import io.nsxtnet.serialization.ByteBufSerializer;
+import io.nsxtnet.serialization.OutboundEncodingSerializer;
 import io.nsxtnet.serialization.SerializationProcessor;
 
 import java.nio.ByteBuffer;
@@ -65,9 +69,63 @@ public class ResponseProcessor
 		
 		if (wrapped != null)
 		{
+			if (isUnencoded(response))
+			{
+				return ((OutboundEncodingSerializer) serializer).serializeUnencoded(wrapped);
+			}
+
 			return serializer.serialize(wrapped);
 		}
 		
 		return null;
 	}
+
+	/**
+	 * @return true if the serializer can write straight into a ByteBuf.
+	 */
+	public boolean isByteBufSerializer()
+	{
+		return (serializer instanceof ByteBufSerializer);
+	}
+
+	/**
+	 * Serializes the wrapped response into a buffer of the given allocator. Requires
+	 * isByteBufSerializer().
+	 *
+	 * @param response
+	 * @param allocator
+	 * @return the serialized response, owned by the caller, or null if the wrapper returned null.
+	 */
+	public ByteBuf serialize(Response response, ByteBufAllocator allocator)
+	{
+		Object wrapped = wrapper.wrap(response);
+
+		if (wrapped == null) return null;
+
+		ByteBuf buffer = allocator.buffer();
+
+		try
+		{
+			if (isUnencoded(response))
+			{
+				((OutboundEncodingSerializer) serializer).serializeUnencoded(wrapped, buffer);
+			}
+			else
+			{
+				((ByteBufSerializer) serializer).serialize(wrapped, buffer);
+			}
+
+			return buffer;
+		}
+		catch (RuntimeException e)
+		{
+			buffer.release();
+			throw e;
+		}
+	}
+
+	private boolean isUnencoded(Response response)
+	{
+		return (!response.isOutboundEncoded() && serializer instanceof OutboundEncodingSerializer);
+	}
 }
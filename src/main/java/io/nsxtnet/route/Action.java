@@ -30,6 +30,7 @@ public class Action
 {
 	private Route route;
 	private UrlMatch match;
+	private AllowedMethods allowedMethods;
 	
 	public Action(Route route, UrlMatch match)
 	{
@@ -38,6 +39,30 @@ public class Action
 		this.match = match;
 	}
 
+	/**
+	 * Creates an Action without a route, for a path only matched by routes for other HTTP methods.
+	 * 
+	 * @param allowedMethods the methods supported at the path.
+	 */
+	public Action(AllowedMethods allowedMethods)
+	{
+		super();
+		this.allowedMethods = allowedMethods;
+	}
+
+	public boolean hasRoute()
+	{
+		return (route != null);
+	}
+
+	/**
+	 * @return the methods supported at the path, if this Action has no route. Otherwise null.
+	 */
+	public AllowedMethods getAllowedMethods()
+	{
+		return allowedMethods;
+	}
+
 	public Route getRoute()
 	{
 		return route;
@@ -80,4 +105,12 @@ public class Action
     {
     	return match.get(key);
     }
+
+    /**
+     * @return the UrlMatch of the route, from which URL parameters are read lazily.
+     */
+    public UrlMatch getMatch()
+    {
+    	return match;
+    }
 }
@@ -0,0 +1,38 @@
+/*
+    Copyright 2014, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package io.nsxtnet.route;
+
+import io.nsxtnet.http.Request;
+import io.nsxtnet.http.Response;
+
+/**
+ * Calls a route's action method on its controller, which is bound to the invoker when the
+ * route is built. See ActionInvokerFactory.
+ *
+ * @author kosh
+ * @since Dec 18, 2014
+ */
+public interface ActionInvoker
+{
+	/**
+	 * @param request
+	 * @param response
+	 * @return the return value of the action method, or null if it is void.
+	 * @throws Throwable whatever the action method throws, unwrapped.
+	 */
+	public Object invoke(Request request, Response response)
+	throws Throwable;
+}
@@ -0,0 +1,189 @@
+/*
+    Copyright 2014, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package io.nsxtnet.route;
+
+import io.nsxtnet.exception.ServiceException;
+import io.nsxtnet.http.Request;
+import io.nsxtnet.http.Response;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Binds a controller and its action method into an ActionInvoker, once, when a route is
+ * built. In order of preference, the invoker is:
+ * <ul>
+ *   <li>a class generated by LambdaMetafactory that calls the action directly, which the JIT
+ *       can inline. Requires a public action with a reference return type, on a public class
+ *       visible to this class loader.</li>
+ *   <li>a MethodHandle bound to the controller, for any other action.</li>
+ *   <li>Method.invoke(), should the action not be accessible to a MethodHandle.</li>
+ * </ul>
+ *
+ * @author kosh
+ * @since Dec 18, 2014
+ */
+public final class ActionInvokerFactory
+{
+	private static final MethodType INVOKER_TYPE = MethodType.methodType(Object.class, Request.class, Response.class);
+
+	private ActionInvokerFactory()
+	{
+		// prevents instantiation.
+	}
+
+	/**
+	 * @param controller the controller, ignored if the action is static.
+	 * @param action a method taking a Request and a Response.
+	 * @return an ActionInvoker calling the action on the controller.
+	 */
+	public static ActionInvoker create(Object controller, Method action)
+	{
+		MethodHandle handle;
+
+		try
+		{
+			handle = MethodHandles.lookup().unreflect(action);
+		}
+		catch (Exception e)
+		{
+			return new ReflectiveInvoker(controller, action);
+		}
+
+		if (canGenerate(action))
+		{
+			try
+			{
+				return generate(controller, action, handle);
+			}
+			catch (Throwable t)
+			{
+				// fall through to the MethodHandle.
+			}
+		}
+
+		boolean isStatic = Modifier.isStatic(action.getModifiers());
+		return new MethodHandleInvoker((isStatic ? handle : handle.bindTo(controller)).asType(INVOKER_TYPE));
+	}
+
+
+	// SECTION: UTILITY - PRIVATE
+
+	private static boolean canGenerate(Method action)
+	{
+		Class<?> type = action.getDeclaringClass();
+
+		return (!action.getReturnType().isPrimitive()
+			&& Modifier.isPublic(action.getModifiers())
+			&& Modifier.isPublic(type.getModifiers())
+			&& isVisible(type)
+			&& isVisible(action.getReturnType()));
+	}
+
+	/**
+	 * The generated class is defined in this class' loader, so it must be able to
+	 * resolve the types it refers to.
+	 */
+	private static boolean isVisible(Class<?> type)
+	{
+		if (type.isArray())
+		{
+			return isVisible(type.getComponentType());
+		}
+
+		try
+		{
+			return (Class.forName(type.getName(), false, ActionInvokerFactory.class.getClassLoader()) == type);
+		}
+		catch (ClassNotFoundException e)
+		{
+			return false;
+		}
+	}
+
+	private static ActionInvoker generate(Object controller, Method action, MethodHandle handle)
+	throws Throwable
+	{
+		boolean isStatic = Modifier.isStatic(action.getModifiers());
+		MethodType factoryType = (isStatic
+			? MethodType.methodType(ActionInvoker.class)
+			: MethodType.methodType(ActionInvoker.class, action.getDeclaringClass()));
+		CallSite site = LambdaMetafactory.metafactory(MethodHandles.lookup(), "invoke", factoryType,
+			INVOKER_TYPE, handle, MethodType.methodType(action.getReturnType(), Request.class, Response.class));
+
+		return (ActionInvoker) (isStatic ? site.getTarget().invoke() : site.getTarget().invoke(controller));
+	}
+
+
+	// SECTION: INNER CLASSES
+
+	private static class MethodHandleInvoker
+	implements ActionInvoker
+	{
+		private final MethodHandle handle;
+
+		public MethodHandleInvoker(MethodHandle handle)
+		{
+			super();
+			this.handle = handle;
+		}
+
+		@Override
+		public Object invoke(Request request, Response response)
+		throws Throwable
+		{
+			return (Object) handle.invokeExact(request, response);
+		}
+	}
+
+	private static class ReflectiveInvoker
+	implements ActionInvoker
+	{
+		private final Object controller;
+		private final Method action;
+
+		public ReflectiveInvoker(Object controller, Method action)
+		{
+			super();
+			this.controller = controller;
+			this.action = action;
+		}
+
+		@Override
+		public Object invoke(Request request, Response response)
+		throws Throwable
+		{
+			try
+			{
+				return action.invoke(controller, request, response);
+			}
+			catch (InvocationTargetException e)
+			{
+				throw e.getCause();
+			}
+			catch (Exception e)
+			{
+				throw new ServiceException(e);
+			}
+		}
+	}
+}
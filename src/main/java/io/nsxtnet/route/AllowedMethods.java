@@ -0,0 +1,71 @@
+/*
+    Copyright 2014, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package io.nsxtnet.route;
+
+import io.netty.handler.codec.http.HttpMethod;
+import io.nsxtnet.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The HTTP methods supported by the routes sharing a URL pattern, precomputed when the
+ * routes are added so that answering a request with a 405 costs no more than a route hit.
+ *
+ * <p/>AllowedMethods is immutable.
+ *
+ * @author kosh
+ * @since Dec 16, 2014
+ */
+public class AllowedMethods
+{
+	private List<HttpMethod> methods;
+	private String allowHeader;
+
+	/**
+	 * @param routes the routes sharing a URL pattern, in the order they were declared.
+	 */
+	public AllowedMethods(List<Route> routes)
+	{
+		super();
+		List<HttpMethod> methods = new ArrayList<HttpMethod>(routes.size());
+
+		for (Route route : routes)
+		{
+			methods.add(route.getMethod());
+		}
+
+		this.methods = Collections.unmodifiableList(methods);
+		this.allowHeader = StringUtils.join(",", methods);
+	}
+
+	/**
+	 * @return the methods, one per route, in declaration order. Never null.
+	 */
+	public List<HttpMethod> getMethods()
+	{
+		return methods;
+	}
+
+	/**
+	 * @return the value of the Allow header for a 405 response.
+	 */
+	public String getAllowHeader()
+	{
+		return allowHeader;
+	}
+}
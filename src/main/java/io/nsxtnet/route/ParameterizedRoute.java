@@ -18,6 +18,7 @@ package io.nsxtnet.route;
 import io.netty.handler.codec.http.HttpMethod;
 import io.nsxtnet.route.Route;
 import io.nsxtnet.url.UrlMatch;
+import io.nsxtnet.url.UrlMatcher;
 import io.nsxtnet.url.UrlPattern;
 
 import java.lang.reflect.Method;
@@ -76,6 +77,22 @@ extends Route
     	}
     }
 
+    @Override
+    public List<UrlMatcher> getUrlMatchers()
+    {
+    	List<UrlMatcher> matchers = super.getUrlMatchers();
+
+    	if (aliases != null)
+    	{
+    		for (UrlPattern alias : aliases)
+    		{
+    			matchers.add(alias);
+    		}
+    	}
+
+    	return matchers;
+    }
+
     @Override
     public UrlMatch match(String url)
     {
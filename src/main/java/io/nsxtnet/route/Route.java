@@ -16,14 +16,12 @@
 package io.nsxtnet.route;
 
 import io.netty.handler.codec.http.HttpMethod;
-import io.nsxtnet.exception.ServiceException;
 import io.nsxtnet.http.Request;
 import io.nsxtnet.http.Response;
 import io.nsxtnet.url.UrlMatch;
 import io.nsxtnet.url.UrlMatcher;
 import io.nsxtnet.util.StringUtils;
 
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.util.*;
 
@@ -42,8 +40,14 @@ public abstract class Route
 	private UrlMatcher urlMatcher;
 	private Object controller;
 	private Method action;
+	private ActionInvoker invoker;
 	private HttpMethod method;
 	private boolean shouldSerializeResponse = true;
+	private boolean isExecutedInIoThread = false;
+	private boolean isOutboundEncoded = true;
+	private boolean isCompressed = true;
+	private boolean isStreamingUpload = false;
+	private boolean isStreamingDownload = false;
 	private String name;
 	private String baseUrl;
 	private List<String> supportedFormats = new ArrayList<String>();
@@ -66,6 +70,7 @@ public abstract class Route
 		this.controller = controller;
 		this.action = action;
 		this.action.setAccessible(true);
+		this.invoker = ActionInvokerFactory.create(controller, action);
 		this.method = method;
 		this.shouldSerializeResponse = shouldSerializeResponse;
 		this.name = name;
@@ -146,6 +151,87 @@ public abstract class Route
 		return shouldSerializeResponse;
 	}
 
+	/**
+	 * Returns whether the route is processed on the I/O thread that received the request,
+	 * even if the server has a background executor. See RouteBuilder.executeInIoThread().
+	 * 
+	 * @return true if the route must not be offloaded to the executor.
+	 */
+	public boolean isExecutedInIoThread()
+	{
+		return isExecutedInIoThread;
+	}
+
+	public void setExecutedInIoThread(boolean value)
+	{
+		this.isExecutedInIoThread = value;
+	}
+
+	/**
+	 * Returns whether string values in the serialized response get outbound (XSS)
+	 * encoding, where the serializer supports it. See RouteBuilder.noOutboundEncoding().
+	 * 
+	 * @return true unless the route opted out.
+	 */
+	public boolean isOutboundEncoded()
+	{
+		return isOutboundEncoded;
+	}
+
+	public void setOutboundEncoded(boolean value)
+	{
+		this.isOutboundEncoded = value;
+	}
+
+	/**
+	 * Returns whether the route's responses may be compressed, if the client accepts it.
+	 * See RouteBuilder.noCompression().
+	 * 
+	 * @return true unless the route opted out.
+	 */
+	public boolean isCompressed()
+	{
+		return isCompressed;
+	}
+
+	public void setCompressed(boolean value)
+	{
+		this.isCompressed = value;
+	}
+
+	/**
+	 * Returns whether request bodies are streamed to the controller, a
+	 * StreamingUploadController, rather than aggregated. See
+	 * RouteBuilder.useStreamingMultipartUpload().
+	 * 
+	 * @return true if the route's request bodies are streamed.
+	 */
+	public boolean isStreamingUpload()
+	{
+		return isStreamingUpload;
+	}
+
+	public void setStreamingUpload(boolean value)
+	{
+		this.isStreamingUpload = value;
+	}
+
+	/**
+	 * Returns whether a response body the action returns as a ChunkedInput, InputStream or
+	 * Iterator is written in chunks as it is read. See RouteBuilder.useStreamingDownload().
+	 * 
+	 * @return true if the route's responses may be streamed.
+	 */
+	public boolean isStreamingDownload()
+	{
+		return isStreamingDownload;
+	}
+
+	public void setStreamingDownload(boolean value)
+	{
+		this.isStreamingDownload = value;
+	}
+
     public Collection<String> getSupportedFormats()
     {
 	    return Collections.unmodifiableList(supportedFormats);
@@ -188,34 +274,46 @@ public abstract class Route
 	{
 		return urlMatcher.match(url);
 	}
+
+	/**
+	 * Returns the UrlMatchers consulted by match(), in the order they are tried.
+	 * 
+	 * @return a List of UrlMatcher instances. Never null.
+	 */
+	public List<UrlMatcher> getUrlMatchers()
+	{
+		List<UrlMatcher> matchers = new ArrayList<UrlMatcher>(1);
+		matchers.add(urlMatcher);
+		return matchers;
+	}
 	
 	public List<String> getUrlParameters()
 	{
 		return urlMatcher.getParameterNames();
 	}
 
+	/**
+	 * Calls the action on the controller through the ActionInvoker bound when the route was
+	 * built. Runtime exceptions thrown by the action are rethrown as-is, anything else it
+	 * throws is wrapped in a RuntimeException.
+	 * 
+	 * @param request
+	 * @param response
+	 * @return the return value of the action, or null if it is void.
+	 */
 	public Object invoke(Request request, Response response)
 	{
 		try
         {
-	        return action.invoke(controller, request, response);
+	        return invoker.invoke(request, response);
         }
-		catch (InvocationTargetException e)
+		catch (RuntimeException e)
 		{
-			Throwable cause = e.getCause();
-			
-			if (RuntimeException.class.isAssignableFrom(cause.getClass()))
-			{
-				throw (RuntimeException) e.getCause();
-			}
-			else
-			{
-				throw new RuntimeException(cause);
-			}
+			throw e;
+		}
+		catch (Throwable cause)
+		{
+			throw new RuntimeException(cause);
 		}
-        catch (Exception e)
-        {
-        	throw new ServiceException(e);
-        }
 	}
 }
@@ -7,6 +7,7 @@ import io.nsxtnet.domain.metadata.UriMetadata;
 import io.nsxtnet.exception.ConfigurationException;
 import io.nsxtnet.http.Request;
 import io.nsxtnet.http.Response;
+import io.nsxtnet.pipeline.StreamingUploadController;
 
 import static io.netty.handler.codec.http.HttpMethod.GET;
 import static io.netty.handler.codec.http.HttpMethod.POST;
@@ -58,6 +59,11 @@ public abstract class RouteBuilder
 	private Map<HttpMethod, String> actionNames = new HashMap<HttpMethod, String>();
 	private Object controller;
 	private boolean shouldSerializeResponse = true;
+	private boolean isExecutedInIoThread = false;
+	private boolean isOutboundEncoded = true;
+	private boolean isCompressed = true;
+	private boolean isStreamingUpload = false;
+	private boolean isStreamingDownload = false;
 	private String name;
 	private String baseUrl;
 	private Set<String> flags = new HashSet<String>();
@@ -146,6 +152,31 @@ public abstract class RouteBuilder
 		return this;
 	}
 
+	/**
+	 * Turns off outbound (XSS) encoding of string values in the serialized response, for
+	 * serializers that do it (e.g. JacksonJsonProcessor). Only for routes whose responses
+	 * never contain untrusted text, or are never rendered as HTML.
+	 * 
+	 * @return the RouteBuilder instance.
+	 */
+	public RouteBuilder noOutboundEncoding()
+	{
+		this.isOutboundEncoded = false;
+		return this;
+	}
+
+	/**
+	 * Turns off response compression for this route, e.g. for responses that are small,
+	 * already compressed, or must not be buffered as a whole.
+	 * 
+	 * @return the RouteBuilder instance.
+	 */
+	public RouteBuilder noCompression()
+	{
+		this.isCompressed = false;
+		return this;
+	}
+
 	/**
 	 * Turns on response serialization (the default) so the response body will be serialized
 	 * (e.g. into JSON or XML).
@@ -220,15 +251,59 @@ public abstract class RouteBuilder
 		return this;
 	}
 
+	/**
+	 * Process requests for this route on the I/O (event loop) thread that received them,
+	 * instead of the server's background executor. Only suitable for routes whose
+	 * preprocessors, action and postprocessors never block, as every other connection
+	 * on that thread waits for them.
+	 * 
+	 * @return the RouteBuilder instance.
+	 */
+	public RouteBuilder executeInIoThread()
+	{
+		this.isExecutedInIoThread = true;
+		return this;
+	}
+
+	/**
+	 * Process requests for this route on the server's background executor (the default),
+	 * if it has one. See NSxtNet.setExecutorThreadCount().
+	 * 
+	 * @return the RouteBuilder instance.
+	 */
+	public RouteBuilder executeInBackground()
+	{
+		this.isExecutedInIoThread = false;
+		return this;
+	}
+
+	/**
+	 * Streams request bodies to the controller, chunk by chunk, instead of aggregating them,
+	 * so uploads aren't limited by the maximum content size nor held in memory. The
+	 * controller must implement StreamingUploadController; the action is invoked once the
+	 * body is complete.
+	 * 
+	 * @return the RouteBuilder instance.
+	 */
 	public RouteBuilder useStreamingMultipartUpload()
 	{
-		// TODO: complete supportMultipart()
+		this.isStreamingUpload = true;
 		return this;
 	}
 	
+	/**
+	 * Streams the response, instead of serializing it, if the action returns a ChunkedInput,
+	 * an InputStream or an Iterator of chunks (byte[], ByteBuf or text). The body is written
+	 * with Transfer-Encoding: chunked, as fast as the client takes it, and the finally
+	 * processors run once the last chunk is written. Other return values are serialized as usual.
+	 * <p/>
+	 * Chunks are read on the I/O thread, so reading them must not block for long.
+	 * 
+	 * @return the RouteBuilder instance.
+	 */
 	public RouteBuilder useStreamingDownload()
 	{
-		// TODO: complete useStreamingdownload()
+		this.isStreamingDownload = true;
 		return this;
 	}
 	
@@ -247,6 +322,11 @@ public abstract class RouteBuilder
 			methods = DEFAULT_HTTP_METHODS;
 		}
 
+		if (isStreamingUpload && !(controller instanceof StreamingUploadController))
+		{
+			throw new ConfigurationException("Streaming upload route requires a StreamingUploadController: " + uri);
+		}
+
 		List<Route> routes = new ArrayList<Route>();
 		String pattern = toRegexPattern(uri);
 		
@@ -260,7 +340,13 @@ public abstract class RouteBuilder
 			}
 			
 			Method action = determineActionMethod(controller, actionName);
-			routes.add(newRoute(pattern, controller, action, method, shouldSerializeResponse, name, supportedFormats, defaultFormat, flags, parameters, baseUrl));
+			Route route = newRoute(pattern, controller, action, method, shouldSerializeResponse, name, supportedFormats, defaultFormat, flags, parameters, baseUrl);
+			route.setExecutedInIoThread(isExecutedInIoThread);
+			route.setOutboundEncoded(isOutboundEncoded);
+			route.setCompressed(isCompressed);
+			route.setStreamingUpload(isStreamingUpload);
+			route.setStreamingDownload(isStreamingDownload);
+			routes.add(route);
 		}
 		
 		return routes;
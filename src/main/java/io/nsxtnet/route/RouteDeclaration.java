@@ -78,6 +78,7 @@ public class RouteDeclaration
             }
 		});
 
+		results.indexStaticRoutes();
 		return results;
 	}
 
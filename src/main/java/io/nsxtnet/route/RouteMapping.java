@@ -16,7 +16,8 @@
 package io.nsxtnet.route;
 
 import io.netty.handler.codec.http.HttpMethod;
-import io.nsxtnet.url.UrlMatch;
+import io.nsxtnet.url.UrlMatcher;
+import io.nsxtnet.url.UrlPattern;
 
 import java.util.*;
 
@@ -42,6 +43,9 @@ public class RouteMapping
 
 	private Map<String, Map<HttpMethod, Route>> routesByName = new HashMap<String, Map<HttpMethod, Route>>();
 	private Map<String, List<Route>> routesByPattern = new LinkedHashMap<String, List<Route>>();
+	private RouteTrie routeTrie = new RouteTrie();
+	private Map<HttpMethod, Map<String, Action>> staticActions = new HashMap<HttpMethod, Map<String, Action>>();
+	private boolean hasStreamingUploadRoutes = false;
 
 	// SECTION: CONSTRUCTOR
 
@@ -83,26 +87,43 @@ public class RouteMapping
 	/**
 	 * Attempts to match the path and method to an appropriate Route, returning an
 	 * Action instance if a match is found.  Returns null if no match is found.
+	 * Paths of parameterless routes (see indexStaticRoutes()) are resolved with a
+	 * single hash lookup. Other paths are looked up in a RouteTrie, so the cost depends
+	 * on the number of path segments rather than the number of routes.
 	 * 
 	 * @param method
 	 *            the HTTP method (GET, PUT, POST, DELETE) for which to retrieve
 	 *            the routes.
 	 * @param path the path portion of the url to match.
-	 * @return a new Action or null, if the path/method combination don't match.
+	 * @return an Action or null, if the path/method combination don't match.
 	 */
 	public Action getActionFor(HttpMethod method, String path)
 	{
-		for (Route route : routes.get(method))
-		{
-			UrlMatch match = route.match(path);
+		Action action = getStaticAction(method, path);
+		return (action != null ? action : routeTrie.getActionFor(method, path));
+	}
 
-			if (match != null)
-			{
-				return new Action(route, match);
-			}
-		}
-		
-		return null;
+	/**
+	 * Like getActionFor(), but if no route for the method matches the path, determines in the
+	 * same lookup which routes for other methods do, as getAllowedMethods() would.
+	 * 
+	 * @param method the HTTP method (GET, PUT, POST, DELETE).
+	 * @param path the path portion of the url to match.
+	 * @return an Action with a route, an Action with only the AllowedMethods at the path,
+	 * or null if no route matches the path.
+	 */
+	public Action resolve(HttpMethod method, String path)
+	{
+		Action action = getStaticAction(method, path);
+		return (action != null ? action : routeTrie.resolve(method, path));
+	}
+
+	/**
+	 * @return true if any route streams its request bodies (see Route.isStreamingUpload()).
+	 */
+	public boolean hasStreamingUploadRoutes()
+	{
+		return hasStreamingUploadRoutes;
 	}
 
 	/**
@@ -175,7 +196,10 @@ public class RouteMapping
 	public void addRoute(Route route)
 	{
 		routes.get(route.getMethod()).add(route);
+		routeTrie.addRoute(route);
+		staticActions.clear();
 		addByPattern(route);
+		hasStreamingUploadRoutes |= route.isStreamingUpload();
 
 		if (route.hasName())
 		{
@@ -183,9 +207,72 @@ public class RouteMapping
 		}
 	}
 
+	/**
+	 * Builds an exact-match table, per HTTP method, of the paths declared by parameterless
+	 * URL patterns (and aliases). Each path maps to the Action it resolves to when all
+	 * routes are considered, so an earlier, overlapping parameterized route still wins.
+	 * Adding a route afterward discards the table.
+	 */
+	public void indexStaticRoutes()
+	{
+		staticActions.clear();
+
+		for (Map.Entry<HttpMethod, List<Route>> entry : routes.entrySet())
+		{
+			Map<String, Action> actions = new HashMap<String, Action>();
+
+			for (Route route : entry.getValue())
+			{
+				for (UrlMatcher matcher : route.getUrlMatchers())
+				{
+					String path = getStaticPath(matcher);
+
+					if (path == null || actions.containsKey(path)) continue;
+
+					Action action = routeTrie.getActionFor(entry.getKey(), path);
+
+					if (action != null)
+					{
+						actions.put(path, action);
+					}
+				}
+			}
+
+			if (!actions.isEmpty())
+			{
+				staticActions.put(entry.getKey(), actions);
+			}
+		}
+	}
+
 
 	// SECTION: UTILITY - PRIVATE
 
+	private Action getStaticAction(HttpMethod method, String path)
+	{
+		Map<String, Action> actions = staticActions.get(method);
+
+		if (actions == null) return null;
+
+		int query = path.indexOf('?');
+		return actions.get(query < 0 ? path : path.substring(0, query));
+	}
+
+	/**
+	 * @return the only path the matcher matches (ignoring query strings), or null if it has parameters.
+	 */
+	private String getStaticPath(UrlMatcher matcher)
+	{
+		if (!(matcher instanceof UrlPattern)) return null;
+
+		UrlPattern pattern = (UrlPattern) matcher;
+
+		if (!pattern.getParameterNames().isEmpty()) return null;
+
+		String path = pattern.getUrlPattern();
+		return (pattern.matches(path) ? path : null);
+	}
+
 	private void addNamedRoute(Route route)
 	{
 		Map<HttpMethod, Route> routesByMethod = routesByName.get(route.getName());
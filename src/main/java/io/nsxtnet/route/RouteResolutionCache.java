@@ -0,0 +1,277 @@
+/*
+    Copyright 2014, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package io.nsxtnet.route;
+
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.util.concurrent.FastThreadLocal;
+
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Caches resolved Actions by HTTP method and raw path (including any query string), in
+ * front of the RouteMapping. Each thread (i.e. each event loop) gets its own bounded LRU
+ * cache, so lookups never synchronize.
+ *
+ * <p/>Routes whose paths are rarely requested twice (e.g. '/users/{userId}' over many
+ * users, or any route requested with varying query strings) would only churn the cache.
+ * Per thread, once a route has been admitted BYPASS_SAMPLE_SIZE times, it is bypassed if its
+ * entries got fewer hits than admissions. A bypassed route still has one in BYPASS_PROBE_RATE
+ * of its Actions admitted, and the decision is made anew every BYPASS_SAMPLE_SIZE admissions,
+ * so a route that turns hot (or was cold only while the server warmed up) is cached again.
+ *
+ * <p/>The hit, miss and bypass counts are summed over the threads without synchronization,
+ * so they're approximate while requests are being processed.
+ *
+ * @author kosh
+ * @since Dec 17, 2014
+ */
+public class RouteResolutionCache
+{
+	// SECTION: CONSTANTS
+
+	private static final int BYPASS_SAMPLE_SIZE = 128;
+	private static final int BYPASS_PROBE_RATE = 16;
+
+
+	// SECTION: INSTANCE VARIABLES
+
+	private final int capacity;
+	private final List<LocalCache> caches = new CopyOnWriteArrayList<LocalCache>();
+	private final FastThreadLocal<LocalCache> localCache = new FastThreadLocal<LocalCache>()
+	{
+		@Override
+		protected LocalCache initialValue()
+		{
+			LocalCache cache = new LocalCache(capacity);
+			caches.add(cache);
+			return cache;
+		}
+	};
+
+
+	// SECTION: CONSTRUCTOR
+
+	/**
+	 * @param capacity the maximum number of entries cached per thread.
+	 */
+	public RouteResolutionCache(int capacity)
+	{
+		super();
+
+		if (capacity <= 0)
+		{
+			throw new IllegalArgumentException("capacity must be greater than zero");
+		}
+
+		this.capacity = capacity;
+	}
+
+
+	// SECTION: ACCESSORS
+
+	public int getCapacity()
+	{
+		return capacity;
+	}
+
+	public long getHitCount()
+	{
+		long count = 0;
+
+		for (LocalCache cache : caches)
+		{
+			count += cache.hits;
+		}
+
+		return count;
+	}
+
+	public long getMissCount()
+	{
+		long count = 0;
+
+		for (LocalCache cache : caches)
+		{
+			count += cache.misses;
+		}
+
+		return count;
+	}
+
+	/**
+	 * @return the number of resolved Actions not cached, because their route was bypassed.
+	 */
+	public long getBypassCount()
+	{
+		long count = 0;
+
+		for (LocalCache cache : caches)
+		{
+			count += cache.bypasses;
+		}
+
+		return count;
+	}
+
+
+	// SECTION: UTILITY - PUBLIC
+
+	/**
+	 * @param method the effective HTTP method of the request.
+	 * @param path the raw path of the request, including any query string.
+	 * @return the cached Action, or null.
+	 */
+	public Action get(HttpMethod method, String path)
+	{
+		return localCache.get().get(method, path);
+	}
+
+	/**
+	 * Caches the Action a method and path resolved to, unless its route is bypassed.
+	 *
+	 * @param method the effective HTTP method of the request.
+	 * @param path the raw path of the request, including any query string.
+	 * @param action the resolved Action. Must not be null.
+	 */
+	public void put(HttpMethod method, String path, Action action)
+	{
+		localCache.get().put(method, path, action);
+	}
+
+
+	// SECTION: INNER CLASSES
+
+	private static class Key
+	{
+		private HttpMethod method;
+		private String path;
+		private int hash;
+
+		public Key set(HttpMethod method, String path)
+		{
+			this.method = method;
+			this.path = path;
+			this.hash = 31 * method.hashCode() + path.hashCode();
+			return this;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object object)
+		{
+			if (!(object instanceof Key)) return false;
+
+			Key that = (Key) object;
+			return (this.hash == that.hash && this.path.equals(that.path) && this.method.equals(that.method));
+		}
+	}
+
+	private static class RouteStatistics
+	{
+		private int admissions = 0;
+		private int hits = 0;
+		private int skipped = 0;
+		private boolean isBypassed = false;
+	}
+
+	/**
+	 * The cache of a single thread. Only the counters are read by other threads.
+	 */
+	private static class LocalCache
+	{
+		private Map<Key, Action> entries;
+		private Map<Route, RouteStatistics> statistics = new IdentityHashMap<Route, RouteStatistics>();
+		private Key probe = new Key();
+		private long hits = 0L;
+		private long misses = 0L;
+		private long bypasses = 0L;
+
+		@SuppressWarnings("serial")
+		public LocalCache(final int capacity)
+		{
+			super();
+			this.entries = new LinkedHashMap<Key, Action>(capacity * 4 / 3 + 1, 0.75f, true)
+			{
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Key, Action> eldest)
+				{
+					return (size() > capacity);
+				}
+			};
+		}
+
+		public Action get(HttpMethod method, String path)
+		{
+			Action action = entries.get(probe.set(method, path));
+			probe.path = null;
+
+			if (action == null)
+			{
+				misses++;
+				return null;
+			}
+
+			hits++;
+			statisticsFor(action.getRoute()).hits++;
+			return action;
+		}
+
+		public void put(HttpMethod method, String path, Action action)
+		{
+			RouteStatistics routeStatistics = statisticsFor(action.getRoute());
+
+			if (routeStatistics.isBypassed && ++routeStatistics.skipped % BYPASS_PROBE_RATE != 0)
+			{
+				bypasses++;
+				return;
+			}
+
+			entries.put(new Key().set(method, path), action);
+
+			if (++routeStatistics.admissions == BYPASS_SAMPLE_SIZE)
+			{
+				routeStatistics.isBypassed = (routeStatistics.hits < routeStatistics.admissions);
+				routeStatistics.admissions = 0;
+				routeStatistics.hits = 0;
+			}
+		}
+
+		/**
+		 * Actions without a route (405s) share the statistics under the null key.
+		 */
+		private RouteStatistics statisticsFor(Route route)
+		{
+			RouteStatistics routeStatistics = statistics.get(route);
+
+			if (routeStatistics == null)
+			{
+				routeStatistics = new RouteStatistics();
+				statistics.put(route, routeStatistics);
+			}
+
+			return routeStatistics;
+		}
+	}
+}
@@ -21,8 +21,6 @@ import io.nsxtnet.exception.NotFoundException;
 import io.nsxtnet.http.Request;
 import io.nsxtnet.util.Resolver;
 
-import java.util.List;
-
 /**
  * @author toddf
  * @since May 4, 2010
@@ -30,13 +28,52 @@ import java.util.List;
 public class RouteResolver implements Resolver<Action>
 {
 	private RouteMapping routeMapping;
+	private RouteResolutionCache cache;
 	
 	public RouteResolver(RouteMapping routes)
+	{
+		this(routes, null);
+	}
+
+	/**
+	 * @param routes
+	 * @param cache a cache of resolved Actions, or null to resolve every request against the routes.
+	 */
+	public RouteResolver(RouteMapping routes, RouteResolutionCache cache)
 	{
 		super();
 		this.routeMapping = routes;
+		this.cache = cache;
+	}
+
+	public RouteResolutionCache getCache()
+	{
+		return cache;
 	}
 	
+	/**
+	 * @return true if any route streams its request bodies (see Route.isStreamingUpload()).
+	 */
+	public boolean hasStreamingUploadRoutes()
+	{
+		return routeMapping.hasStreamingUploadRoutes();
+	}
+
+	/**
+	 * Determines whether the request head, whose body hasn't arrived yet, is for a route
+	 * that streams request bodies. Method tunneling (see Parameters.Query.METHOD_TUNNEL)
+	 * isn't considered, as the query string isn't parsed yet.
+	 * 
+	 * @param method the HTTP method of the request.
+	 * @param path the request URI.
+	 * @return true if the request resolves to a streaming upload route.
+	 */
+	public boolean isStreamingUpload(HttpMethod method, String path)
+	{
+		Action action = resolve(method, path);
+		return (action != null && action.hasRoute() && action.getRoute().isStreamingUpload());
+	}
+
 	public Route getNamedRoute(String name, HttpMethod method)
 	{
 		return routeMapping.getNamedRoute(name, method);
@@ -45,17 +82,38 @@ public class RouteResolver implements Resolver<Action>
 	@Override
 	public Action resolve(Request request)
 	{
-		Action action = routeMapping.getActionFor(request.getEffectiveHttpMethod(), request.getPath());
+		Action action = resolve(request.getEffectiveHttpMethod(), request.getPath());
 		
-		if (action != null) return action;
+		if (action == null)
+		{
+			throw new NotFoundException("Unresolvable URL: " + request.getUrl());
+		}
 
-		List<HttpMethod> allowedMethods = routeMapping.getAllowedMethods(request.getPath());
+		if (action.hasRoute()) return action;
 
-		if (allowedMethods != null && !allowedMethods.isEmpty())
+		AllowedMethods allowed = action.getAllowedMethods();
+		throw new MethodNotAllowedException(request.getUrl(), allowed.getMethods(), allowed.getAllowHeader());
+	}
+
+	private Action resolve(HttpMethod method, String path)
+	{
+		if (cache == null)
 		{
-			throw new MethodNotAllowedException(request.getUrl(), allowedMethods);
+			return routeMapping.resolve(method, path);
+		}
+
+		Action action = cache.get(method, path);
+
+		if (action == null)
+		{
+			action = routeMapping.resolve(method, path);
+
+			if (action != null)
+			{
+				cache.put(method, path, action);
+			}
 		}
 
-		throw new NotFoundException("Unresolvable URL: " + request.getUrl());
+		return action;
 	}
 }
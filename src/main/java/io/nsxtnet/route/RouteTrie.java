@@ -0,0 +1,728 @@
+/*
+    Copyright 2014, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+package io.nsxtnet.route;
+
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.util.concurrent.FastThreadLocal;
+import io.nsxtnet.url.UrlMatch;
+import io.nsxtnet.url.UrlMatcher;
+import io.nsxtnet.url.UrlPattern;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A segment trie over the URL patterns of a set of Routes. Literal path segments,
+ * whole-segment '{param}' captures and the trailing '.{format}' suffix are indexed,
+ * so resolving a path costs a walk over its segments instead of a regex match per
+ * registered route.
+ *
+ * <p/>Patterns the trie cannot represent exactly (e.g. several parameters within a
+ * segment, regex meta-characters in a literal, or non-UrlPattern matchers) are kept
+ * aside and matched with their own UrlMatcher. Either way, the first route added wins,
+ * exactly as with a linear scan over the routes in registration order.
+ *
+ * <p/>Routes sharing a pattern form a group, headed by the first of them. When no route
+ * for the requested method matches, the same walk yields the first group whose head
+ * matches the path, along with its precomputed AllowedMethods.
+ *
+ * @author kosh
+ * @since Dec 15, 2014
+ */
+public class RouteTrie
+{
+	// SECTION: CONSTANTS
+
+	private static final String FORMAT_SUFFIX = ".{format}";
+	private static final String FORMAT_PARAMETER = "format";
+
+	// Characters UrlPattern accepts within a parameter value.
+	private static final String PARAMETER_CHARS = "!$%&'()*+,-.0123456789:;=@ABCDEFGHIJKLMNOPQRSTUVWXYZ[]_abcdefghijklmnopqrstuvwxyz~";
+
+	// Characters UrlPattern accepts within a format specifier.
+	private static final String FORMAT_CHARS = "%0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ_abcdefghijklmnopqrstuvwxyz";
+
+	// Characters that make a literal segment a regular expression.
+	private static final String REGEX_META_CHARS = "\\.[]{}()*+?^$|";
+
+	private static final Pattern PARAMETER_SEGMENT = Pattern.compile("\\{(\\w*)\\}");
+
+	private static final boolean[] IS_PARAMETER_CHAR = asciiTable(PARAMETER_CHARS);
+	private static final boolean[] IS_FORMAT_CHAR = asciiTable(FORMAT_CHARS);
+
+	// Lookup state is reused per thread, so that a lookup creates no garbage besides its result.
+	private static final FastThreadLocal<Search> SEARCH = new FastThreadLocal<Search>()
+	{
+		@Override
+		protected Search initialValue()
+		{
+			return new Search();
+		}
+	};
+
+
+	// SECTION: INSTANCE VARIABLES
+
+	private Node root = new Node();
+	private Map<HttpMethod, List<Candidate>> unindexed = new HashMap<HttpMethod, List<Candidate>>();
+	private List<Candidate> unindexedHeads = new ArrayList<Candidate>();
+	private Map<String, Group> groups = new HashMap<String, Group>();
+	private int routeCount = 0;
+
+
+	// SECTION: CONSTRUCTOR
+
+	public RouteTrie()
+	{
+		super();
+	}
+
+
+	// SECTION: UTILITY - PUBLIC
+
+	/**
+	 * Adds a Route to the trie. Routes take precedence in the order they are added.
+	 *
+	 * @param route
+	 */
+	public void addRoute(Route route)
+	{
+		int order = routeCount++;
+		List<UrlMatcher> matchers = route.getUrlMatchers();
+		Group group = groups.get(route.getPattern());
+		boolean isHead = (group == null);
+
+		if (isHead)
+		{
+			group = new Group();
+			groups.put(route.getPattern(), group);
+		}
+
+		group.add(route);
+
+		for (int i = 0; i < matchers.size(); i++)
+		{
+			Candidate candidate = new Candidate(route, order, i, matchers.get(i));
+			candidate.group = (isHead ? group : null);
+
+			if (!index(candidate))
+			{
+				addUnindexed(candidate);
+			}
+		}
+	}
+
+	/**
+	 * Attempts to match the path and method to an appropriate Route, returning an
+	 * Action instance if a match is found.  Returns null if no match is found.
+	 *
+	 * @param method the HTTP method (GET, PUT, POST, DELETE).
+	 * @param path the path portion of the url to match, with or without query string.
+	 * @return a new Action or null, if the path/method combination don't match.
+	 */
+	public Action getActionFor(HttpMethod method, String path)
+	{
+		return lookup(method, path, false);
+	}
+
+	/**
+	 * Like getActionFor(), but if no route for the method matches the path, returns an
+	 * Action with the AllowedMethods of the first group matching the path instead.
+	 *
+	 * @param method the HTTP method (GET, PUT, POST, DELETE).
+	 * @param path the path portion of the url to match, with or without query string.
+	 * @return an Action with or without a route, or null if no route matches the path.
+	 */
+	public Action resolve(HttpMethod method, String path)
+	{
+		return lookup(method, path, true);
+	}
+
+
+	// SECTION: LOOKUP - PRIVATE
+
+	private Action lookup(HttpMethod method, String path, boolean isResolving)
+	{
+		Search search = SEARCH.get();
+		search.reset(method, path);
+
+		try
+		{
+			if (search.isIndexable())
+			{
+				search(root, 0, search);
+			}
+
+			List<Candidate> others = unindexed.get(method);
+
+			if (others != null)
+			{
+				for (Candidate candidate : others)
+				{
+					if (search.best != null && candidate.compareTo(search.best) > 0) break;
+
+					UrlMatch match = candidate.matcher.match(path);
+
+					if (match != null)
+					{
+						return new Action(candidate.route, match);
+					}
+				}
+			}
+
+			if (search.best != null)
+			{
+				return new Action(search.best.route, search.toUrlMatch());
+			}
+
+			if (!isResolving) return null;
+
+			for (Candidate candidate : unindexedHeads)
+			{
+				if (search.bestHead != null && candidate.compareTo(search.bestHead) > 0) break;
+
+				if (candidate.matcher.matches(path))
+				{
+					return candidate.group.unresolved;
+				}
+			}
+
+			return (search.bestHead == null ? null : search.bestHead.group.unresolved);
+		}
+		finally
+		{
+			search.clear();
+		}
+	}
+
+
+	// SECTION: INDEXING - PRIVATE
+
+	private boolean index(Candidate candidate)
+	{
+		if (!(candidate.matcher instanceof UrlPattern)) return false;
+
+		String pattern = ((UrlPattern) candidate.matcher).getUrlPattern();
+
+		if (pattern == null || !pattern.startsWith("/")) return false;
+
+		if (pattern.endsWith(FORMAT_SUFFIX))
+		{
+			candidate.hasFormat = true;
+			pattern = pattern.substring(0, pattern.length() - FORMAT_SUFFIX.length());
+		}
+
+		String[] segments = pattern.substring(1).split("/", -1);
+		String[] parameterNames = new String[segments.length];
+
+		for (int i = 0; i < segments.length; i++)
+		{
+			Matcher m = PARAMETER_SEGMENT.matcher(segments[i]);
+
+			if (m.matches())
+			{
+				parameterNames[i] = m.group(1);
+			}
+			else if (containsAny(segments[i], REGEX_META_CHARS))
+			{
+				return false;
+			}
+		}
+
+		Node node = root;
+
+		for (int i = 0; i < segments.length; i++)
+		{
+			node = (parameterNames[i] != null ? node.parameterChild() : node.literalChild(segments[i]));
+		}
+
+		candidate.setParameterNames(parameterNames);
+		node.terminals.add(candidate);
+		return true;
+	}
+
+	private void addUnindexed(Candidate candidate)
+	{
+		HttpMethod method = candidate.route.getMethod();
+		List<Candidate> candidates = unindexed.get(method);
+
+		if (candidates == null)
+		{
+			candidates = new ArrayList<Candidate>();
+			unindexed.put(method, candidates);
+		}
+
+		candidates.add(candidate);
+
+		if (candidate.group != null)
+		{
+			unindexedHeads.add(candidate);
+		}
+	}
+
+
+	// SECTION: SEARCH - PRIVATE
+
+	private void search(Node node, int depth, Search s)
+	{
+		if (depth == s.segmentCount - 1)
+		{
+			searchLast(node, s);
+			return;
+		}
+
+		int start = s.starts[depth];
+		int end = s.ends[depth];
+
+		Node child = node.literalChild(s.path, start, end);
+
+		if (child != null)
+		{
+			search(child, depth + 1, s);
+		}
+
+		if (node.parameter != null && isParameter(s.path, start, end))
+		{
+			search(node.parameter, depth + 1, s);
+		}
+	}
+
+	/**
+	 * The last segment may end with a '.{format}' specifier, which only applies to
+	 * patterns declaring it. Such patterns take the specifier whenever the segment
+	 * has a non-empty value before its last dot, mirroring UrlPattern's lazy matching.
+	 */
+	private void searchLast(Node node, Search s)
+	{
+		int start = s.starts[s.segmentCount - 1];
+		int end = s.ends[s.segmentCount - 1];
+		int dot = s.formatDot;
+		boolean formatTaken = (dot > start);
+
+		Node child = node.literalChild(s.path, start, end);
+
+		if (child != null)
+		{
+			s.consider(child, false, false);
+		}
+
+		if (node.parameter != null && isParameter(s.path, start, end))
+		{
+			s.consider(node.parameter, false, !formatTaken);
+		}
+
+		if (dot < 0) return;
+
+		child = node.literalChild(s.path, start, dot);
+
+		if (child != null)
+		{
+			s.consider(child, true, false);
+		}
+
+		if (formatTaken && node.parameter != null && isParameter(s.path, start, dot))
+		{
+			s.consider(node.parameter, true, false);
+		}
+	}
+
+
+	// SECTION: UTILITY - PRIVATE
+
+	private static boolean isParameter(String path, int start, int end)
+	{
+		if (start >= end) return false;
+
+		for (int i = start; i < end; i++)
+		{
+			char c = path.charAt(i);
+
+			if (c >= IS_PARAMETER_CHAR.length || !IS_PARAMETER_CHAR[c]) return false;
+		}
+
+		return true;
+	}
+
+	private static boolean containsAny(String value, String chars)
+	{
+		for (int i = 0; i < value.length(); i++)
+		{
+			if (chars.indexOf(value.charAt(i)) >= 0) return true;
+		}
+
+		return false;
+	}
+
+	private static boolean[] asciiTable(String chars)
+	{
+		boolean[] table = new boolean[128];
+
+		for (int i = 0; i < chars.length(); i++)
+		{
+			table[chars.charAt(i)] = true;
+		}
+
+		return table;
+	}
+
+
+	// SECTION: INNER CLASSES
+
+	/**
+	 * Literal children are kept in an open-addressing table hashed like String.hashCode(),
+	 * so that a segment can be looked up by its bounds within the path without being cut
+	 * out of it.
+	 */
+	private static class Node
+	{
+		private String[] literalKeys;
+		private Node[] literalNodes;
+		private int literalCount = 0;
+		private Node parameter;
+		private List<Candidate> terminals = new ArrayList<Candidate>(1);
+
+		public Node literalChild(String segment)
+		{
+			Node child = literalChild(segment, 0, segment.length());
+
+			if (child == null)
+			{
+				if (literalKeys == null || (literalCount + 1) * 2 > literalKeys.length)
+				{
+					resize(literalKeys == null ? 4 : literalKeys.length * 2);
+				}
+
+				child = new Node();
+				put(segment, child);
+			}
+
+			return child;
+		}
+
+		public Node literalChild(String path, int start, int end)
+		{
+			if (literalKeys == null) return null;
+
+			int length = end - start;
+			int mask = literalKeys.length - 1;
+
+			for (int i = hash(path, start, end) & mask; literalKeys[i] != null; i = (i + 1) & mask)
+			{
+				String key = literalKeys[i];
+
+				if (key.length() == length && path.regionMatches(start, key, 0, length))
+				{
+					return literalNodes[i];
+				}
+			}
+
+			return null;
+		}
+
+		private void put(String segment, Node child)
+		{
+			int mask = literalKeys.length - 1;
+			int i = hash(segment, 0, segment.length()) & mask;
+
+			while (literalKeys[i] != null)
+			{
+				i = (i + 1) & mask;
+			}
+
+			literalKeys[i] = segment;
+			literalNodes[i] = child;
+			literalCount++;
+		}
+
+		private void resize(int capacity)
+		{
+			String[] keys = literalKeys;
+			Node[] nodes = literalNodes;
+			literalKeys = new String[capacity];
+			literalNodes = new Node[capacity];
+			literalCount = 0;
+
+			if (keys == null) return;
+
+			for (int i = 0; i < keys.length; i++)
+			{
+				if (keys[i] != null)
+				{
+					put(keys[i], nodes[i]);
+				}
+			}
+		}
+
+		private static int hash(String value, int start, int end)
+		{
+			int h = 0;
+
+			for (int i = start; i < end; i++)
+			{
+				h = 31 * h + value.charAt(i);
+			}
+
+			return h ^ (h >>> 16);
+		}
+
+		public Node parameterChild()
+		{
+			if (parameter == null)
+			{
+				parameter = new Node();
+			}
+
+			return parameter;
+		}
+	}
+
+	/**
+	 * The routes sharing a pattern, in the order they were added.
+	 */
+	private static class Group
+	{
+		private List<Route> routes = new ArrayList<Route>();
+		private Action unresolved;
+
+		public void add(Route route)
+		{
+			routes.add(route);
+			unresolved = new Action(new AllowedMethods(routes));
+		}
+	}
+
+	/**
+	 * One URL pattern of a Route (either its own or an alias), ordered first by route
+	 * then by the position of the pattern within the route.
+	 */
+	private static class Candidate
+	implements Comparable<Candidate>
+	{
+		private Route route;
+		private int order;
+		private int patternIndex;
+		private UrlMatcher matcher;
+		private boolean hasFormat = false;
+
+		// The group of the route, if the route heads it. Otherwise null.
+		private Group group;
+
+		// Indexes of the parameter segments, and the names of the resulting UrlMatch
+		// parameters, without and with the format specifier.
+		private int[] parameterSegments;
+		private String[] names;
+		private String[] formatNames;
+
+		public Candidate(Route route, int order, int patternIndex, UrlMatcher matcher)
+		{
+			super();
+			this.route = route;
+			this.order = order;
+			this.patternIndex = patternIndex;
+			this.matcher = matcher;
+		}
+
+		public void setParameterNames(String[] segmentNames)
+		{
+			int count = 0;
+
+			for (String name : segmentNames)
+			{
+				if (name != null) count++;
+			}
+
+			parameterSegments = new int[count];
+			names = new String[count];
+			formatNames = new String[count + 1];
+			count = 0;
+
+			for (int i = 0; i < segmentNames.length; i++)
+			{
+				if (segmentNames[i] != null)
+				{
+					parameterSegments[count] = i;
+					names[count] = segmentNames[i];
+					formatNames[count++] = segmentNames[i];
+				}
+			}
+
+			formatNames[count] = FORMAT_PARAMETER;
+		}
+
+		@Override
+		public int compareTo(Candidate that)
+		{
+			if (this.order != that.order)
+			{
+				return (this.order < that.order ? -1 : 1);
+			}
+
+			return (this.patternIndex < that.patternIndex ? -1 : (this.patternIndex == that.patternIndex ? 0 : 1));
+		}
+	}
+
+	/**
+	 * The state of a single lookup: the segment boundaries of the path and the best
+	 * candidate found so far.
+	 */
+	private static class Search
+	{
+		private HttpMethod method;
+		private String path;
+		private int[] starts = new int[16];
+		private int[] ends = new int[16];
+		private int segmentCount = 0;
+		private int formatDot = -1;
+		private Candidate best;
+		private boolean bestTookFormat;
+		private Candidate bestHead;
+
+		public void reset(HttpMethod method, String path)
+		{
+			this.method = method;
+			this.path = path;
+			this.segmentCount = 0;
+			this.formatDot = -1;
+			this.best = null;
+			this.bestTookFormat = false;
+			this.bestHead = null;
+			split();
+		}
+
+		/**
+		 * Drops the references to the request, so that a parked thread doesn't retain it.
+		 */
+		public void clear()
+		{
+			this.method = null;
+			this.path = null;
+			this.best = null;
+			this.bestHead = null;
+		}
+
+		public boolean isIndexable()
+		{
+			return (segmentCount > 0);
+		}
+
+		public void consider(Node node, boolean tookFormat, boolean acceptsFormatPatterns)
+		{
+			for (Candidate candidate : node.terminals)
+			{
+				if (tookFormat ? !candidate.hasFormat : (candidate.hasFormat && !acceptsFormatPatterns && formatDot >= 0)) continue;
+
+				if (candidate.group != null && (bestHead == null || candidate.compareTo(bestHead) < 0))
+				{
+					bestHead = candidate;
+				}
+
+				if (!candidate.route.getMethod().equals(method)) continue;
+
+				if (best == null || candidate.compareTo(best) < 0)
+				{
+					best = candidate;
+					bestTookFormat = tookFormat;
+				}
+			}
+		}
+
+		public UrlMatch toUrlMatch()
+		{
+			int[] segments = best.parameterSegments;
+			String[] names = (bestTookFormat ? best.formatNames : best.names);
+			int[] offsets = new int[names.length << 1];
+			int last = segmentCount - 1;
+
+			for (int i = 0; i < segments.length; i++)
+			{
+				int segment = segments[i];
+				offsets[i << 1] = starts[segment];
+				offsets[(i << 1) + 1] = (segment == last && bestTookFormat ? formatDot : ends[segment]);
+			}
+
+			if (bestTookFormat)
+			{
+				offsets[segments.length << 1] = formatDot + 1;
+				offsets[(segments.length << 1) + 1] = ends[last];
+			}
+
+			return new UrlMatch(path, names, offsets);
+		}
+
+		private void split()
+		{
+			if (path == null || !path.startsWith("/")) return;
+
+			int length = path.indexOf('?');
+
+			if (length < 0)
+			{
+				length = path.length();
+			}
+
+			int count = 1;
+
+			for (int i = 1; i < length; i++)
+			{
+				if (path.charAt(i) == '/') count++;
+			}
+
+			if (starts.length < count)
+			{
+				starts = new int[count];
+				ends = new int[count];
+			}
+
+			int start = 1;
+
+			for (int i = 1; i <= length; i++)
+			{
+				if (i == length || path.charAt(i) == '/')
+				{
+					starts[segmentCount] = start;
+					ends[segmentCount++] = i;
+					start = i + 1;
+				}
+			}
+
+			formatDot = findFormatDot(starts[count - 1], length);
+		}
+
+		/**
+		 * Returns the index of the dot introducing a format specifier in the last
+		 * segment, or -1 if the segment cannot end with one.
+		 */
+		private int findFormatDot(int start, int end)
+		{
+			int dot = path.lastIndexOf('.', end - 1);
+
+			if (dot < start || dot == end - 1) return -1;
+
+			for (int i = dot + 1; i < end; i++)
+			{
+				char c = path.charAt(i);
+
+				if (c >= IS_FORMAT_CHAR.length || !IS_FORMAT_CHAR[c]) return -1;
+			}
+
+			return dot;
+		}
+	}
+}
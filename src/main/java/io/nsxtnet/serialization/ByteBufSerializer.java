@@ -0,0 +1,40 @@
+/*
+ * Copyright 2014, Strategic Gains, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.nsxtnet.serialization;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Implemented by Serializers that can write their output as bytes, straight into the
+ * buffer that is sent, rather than through an intermediate String. Serializers without
+ * it keep working through serialize(Object).
+ *
+ * @author kosh
+ * @since Dec 23, 2014
+ */
+public interface ByteBufSerializer
+{
+	/**
+	 * Writes the serialized form of the object to the buffer, in the response character
+	 * set. A null object writes nothing.
+	 *
+	 * @param object the object to serialize.
+	 * @param buffer the buffer to write to, at its writer index.
+	 */
+	public void serialize(Object object, ByteBuf buffer);
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2014, Strategic Gains, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.nsxtnet.serialization;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Implemented by Serializers that outbound encode string values (e.g. against XSS), so
+ * that routes can opt out of it. See RouteBuilder.noOutboundEncoding().
+ *
+ * @author kosh
+ * @since Dec 25, 2014
+ */
+public interface OutboundEncodingSerializer
+{
+	/**
+	 * As Serializer.serialize(Object), without outbound encoding.
+	 */
+	public String serializeUnencoded(Object object);
+
+	/**
+	 * As ByteBufSerializer.serialize(Object, ByteBuf), without outbound encoding.
+	 */
+	public void serializeUnencoded(Object object, ByteBuf buffer);
+}
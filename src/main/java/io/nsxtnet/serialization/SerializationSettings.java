@@ -15,6 +15,7 @@
 */
 package io.nsxtnet.serialization;
 
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.nsxtnet.http.Request;
 import io.nsxtnet.http.Response;
@@ -65,4 +66,27 @@ public class SerializationSettings
 
 		return processor.serialize(response);
     }
+
+	/**
+	 * Serializes the response, straight into a buffer of the given allocator when the
+	 * processor's serializer supports it, otherwise into a String.
+	 *
+	 * @param response
+	 * @param allocator
+	 * @return a ByteBuf owned by the caller, a String, or null.
+	 */
+	public Object serialize(Response response, ByteBufAllocator allocator)
+	{
+		if (!processor.isByteBufSerializer())
+		{
+			return serialize(response);
+		}
+
+		if (!response.hasHeader(HttpHeaders.Names.CONTENT_TYPE))
+		{
+			response.setContentType(mediaType);
+		}
+
+		return processor.serialize(response, allocator);
+	}
 }
@@ -19,22 +19,212 @@ import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonSerializer;
 import com.fasterxml.jackson.databind.SerializerProvider;
-import org.owasp.encoder.Encode;
+import io.netty.util.concurrent.FastThreadLocal;
 
 import java.io.IOException;
 
 /**
  * Output encodes JSON string values to reduce the possibility of XSS (Cross-Site Scripting) attacks.
+ * <p/>
+ * The output is identical to that of OWASP's Encode.forXmlContent(): '&', '<' and '>' become
+ * entities, and characters that aren't valid in XML become a space. Strings are scanned first
+ * and, in the common case that nothing needs encoding, written as they are. Otherwise they're
+ * encoded into a reusable per-thread buffer that is handed to the generator, rather than into
+ * a new String.
+ * <p/>
+ * Encoding is skipped for a serialization whose ObjectWriter carries the SKIP_ENCODING attribute.
  * 
  * @author toddf
  * @since Apr 28, 2014
  */
 public class JacksonEncodingStringSerializer extends JsonSerializer<String>
 {
+	/**
+	 * ObjectWriter attribute that, when Boolean.TRUE, writes strings unencoded.
+	 */
+	public static final Object SKIP_ENCODING = JacksonEncodingStringSerializer.class.getName() + ".SKIP_ENCODING";
+
+	// Larger buffers are not kept between calls.
+	private static final int MAX_CACHED_BUFFER_SIZE = 8192;
+
+	private static final FastThreadLocal<char[]> BUFFER = new FastThreadLocal<char[]>()
+	{
+		@Override
+		protected char[] initialValue()
+		{
+			return new char[256];
+		}
+	};
+
 	@Override
     public void serialize(String value, JsonGenerator jgen, SerializerProvider provider)
     throws IOException, JsonProcessingException
     {
-		jgen.writeString(Encode.forXmlContent(value));
+		if (Boolean.TRUE.equals(provider.getAttribute(SKIP_ENCODING)))
+		{
+			jgen.writeString(value);
+			return;
+		}
+
+		int first = indexOfEncoded(value);
+
+		if (first < 0)
+		{
+			jgen.writeString(value);
+			return;
+		}
+
+		char[] buffer = bufferFor(encodedLength(value, first));
+		int length = encode(value, first, buffer);
+		jgen.writeString(buffer, 0, length);
     }
+
+
+	// SECTION: UTILITY - PRIVATE
+
+	/**
+	 * @return the index of the first character that must be encoded, or -1.
+	 */
+	private static int indexOfEncoded(String value)
+	{
+		int length = value.length();
+
+		for (int i = 0; i < length; i++)
+		{
+			char c = value.charAt(i);
+
+			if (c >= 0x20 && c < 0x7F)
+			{
+				if (c == '&' || c == '<' || c == '>') return i;
+			}
+			else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1)))
+			{
+				if (isNonCharacter(value.codePointAt(i))) return i;
+
+				i++;
+			}
+			else if (isInvalid(c))
+			{
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * @return an upper bound of the encoded length. Only entities grow the value.
+	 */
+	private static int encodedLength(String value, int first)
+	{
+		int length = value.length();
+
+		for (int i = first; i < value.length(); i++)
+		{
+			char c = value.charAt(i);
+
+			if (c == '&')
+			{
+				length += 4;
+			}
+			else if (c == '<' || c == '>')
+			{
+				length += 3;
+			}
+		}
+
+		return length;
+	}
+
+	/**
+	 * Copies the value into the buffer, encoding from the given index on.
+	 * 
+	 * @return the encoded length.
+	 */
+	private static int encode(String value, int first, char[] buffer)
+	{
+		value.getChars(0, first, buffer, 0);
+		int length = value.length();
+		int j = first;
+
+		for (int i = first; i < length; i++)
+		{
+			char c = value.charAt(i);
+
+			if (c >= 0x20 && c < 0x7F)
+			{
+				switch (c)
+				{
+					case '&':
+						buffer[j++] = '&'; buffer[j++] = 'a'; buffer[j++] = 'm'; buffer[j++] = 'p'; buffer[j++] = ';';
+						break;
+					case '<':
+						buffer[j++] = '&'; buffer[j++] = 'l'; buffer[j++] = 't'; buffer[j++] = ';';
+						break;
+					case '>':
+						buffer[j++] = '&'; buffer[j++] = 'g'; buffer[j++] = 't'; buffer[j++] = ';';
+						break;
+					default:
+						buffer[j++] = c;
+				}
+			}
+			else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1)))
+			{
+				if (isNonCharacter(value.codePointAt(i)))
+				{
+					buffer[j++] = ' ';
+				}
+				else
+				{
+					buffer[j++] = c;
+					buffer[j++] = value.charAt(i + 1);
+				}
+
+				i++;
+			}
+			else
+			{
+				buffer[j++] = (isInvalid(c) ? ' ' : c);
+			}
+		}
+
+		return j;
+	}
+
+	/**
+	 * Characters (outside of printable ASCII and of surrogate pairs) that XML doesn't allow
+	 * or discourages: control characters other than tab, CR and LF (and NEL), lone
+	 * surrogates and non-characters.
+	 */
+	private static boolean isInvalid(char c)
+	{
+		if (c < 0x20) return (c != '\t' && c != '\n' && c != '\r');
+
+		if (c <= 0x9F) return (c != 0x85);
+
+		if (Character.isSurrogate(c)) return true;
+
+		return ((c >= 0xFDD0 && c <= 0xFDEF) || c >= 0xFFFE);
+	}
+
+	/**
+	 * @return true for U+xFFFE and U+xFFFF of any plane.
+	 */
+	private static boolean isNonCharacter(int codePoint)
+	{
+		return ((codePoint & 0xFFFE) == 0xFFFE);
+	}
+
+	private static char[] bufferFor(int length)
+	{
+		char[] buffer = BUFFER.get();
+
+		if (buffer.length >= length) return buffer;
+
+		if (length > MAX_CACHED_BUFFER_SIZE) return new char[length];
+
+		buffer = new char[Math.max(length, buffer.length * 2)];
+		BUFFER.set(buffer);
+		return buffer;
+	}
 }
@@ -23,21 +23,28 @@ import com.fasterxml.jackson.annotation.PropertyAccessor;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 import com.strategicgains.util.date.DateAdapterConstants;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
 import io.nsxtnet.contenttype.ContentType;
+import io.nsxtnet.serialization.ByteBufSerializer;
 import io.nsxtnet.serialization.DeserializationException;
+import io.nsxtnet.serialization.OutboundEncodingSerializer;
 import io.nsxtnet.serialization.SerializationException;
 import io.nsxtnet.util.Format;
 import io.nsxtnet.util.StringUtils;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * A SerializationProcessor to handle JSON input/output. It anticipates ISO
@@ -48,15 +55,22 @@ import java.util.Date;
  * help protect from cross-site scripting (XSS) attacks. The default behavior may be
  * turned off by calling new JacksonJsonProcessor(false) or using your own SimpleModule
  * or ObjectMapper instance.
+ * <p/>
+ * ObjectReaders and ObjectWriters are cached per type, so the root (de)serializer of a
+ * type is only looked up once. Configure the ObjectMapper before the processor is used.
  * 
  * @author toddf
  * @since Mar 16, 2010
  */
 public class JacksonJsonProcessor extends JsonSerializationProcessor
+implements ByteBufSerializer, OutboundEncodingSerializer
 {
 	private static final byte[] EMPTY_STRING_BYTES = StringUtils.EMPTY_STRING.getBytes(ContentType.CHARSET);
 	private ObjectMapper mapper;
 	private boolean shouldOutboundEncode;
+	private final ConcurrentMap<Class<?>, ObjectReader> readers = new ConcurrentHashMap<Class<?>, ObjectReader>();
+	private final ConcurrentMap<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<Class<?>, ObjectWriter>();
+	private final ConcurrentMap<Class<?>, ObjectWriter> unencodedWriters = new ConcurrentHashMap<Class<?>, ObjectWriter>();
 
 	public JacksonJsonProcessor()
 	{
@@ -155,7 +169,7 @@ public class JacksonJsonProcessor extends JsonSerializationProcessor
 	{
 		try
 		{
-			return (string == null || string.trim().isEmpty() ? null : mapper.readValue(string, type));
+			return (string == null || isBlank(string) ? null : readerFor(type).<T>readValue(string));
 		}
 		catch (JsonProcessingException e)
 		{
@@ -167,12 +181,27 @@ public class JacksonJsonProcessor extends JsonSerializationProcessor
 		}
 	}
 
+	/**
+	 * Parses the bytes of the buffer with Jackson's UTF-8 parser: in place, if the buffer
+	 * has a backing array, otherwise through a non-copying InputStream. Either way, the
+	 * buffer's readable bytes are consumed.
+	 */
 	@Override
 	public <T> T deserialize(ByteBuf buffer, Class<T> type)
 	{
+		if (buffer == null || buffer.readableBytes() == 0) return null;
+
 		try
 		{
-			return (buffer == null || buffer.readableBytes() == 0 ? null : mapper.readValue(new InputStreamReader(new ByteBufInputStream(buffer), ContentType.CHARSET), type));
+			if (buffer.hasArray())
+			{
+				int length = buffer.readableBytes();
+				T result = readerFor(type).readValue(buffer.array(), buffer.arrayOffset() + buffer.readerIndex(), length);
+				buffer.skipBytes(length);
+				return result;
+			}
+
+			return readerFor(type).readValue(new ByteBufInputStream(buffer));
 		}
 		catch (JsonProcessingException e)
 		{
@@ -186,17 +215,102 @@ public class JacksonJsonProcessor extends JsonSerializationProcessor
 
 	@Override
 	public String serialize(Object object)
+	{
+		return serialize(object, writers);
+	}
+
+	@Override
+	public String serializeUnencoded(Object object)
+	{
+		return serialize(object, unencodedWriters);
+	}
+
+	/**
+	 * Generates UTF-8 JSON straight into the buffer.
+	 */
+	@Override
+	public void serialize(Object object, ByteBuf buffer)
+	{
+		serialize(object, buffer, writers);
+	}
+
+	@Override
+	public void serializeUnencoded(Object object, ByteBuf buffer)
+	{
+		serialize(object, buffer, unencodedWriters);
+	}
+
+	private String serialize(Object object, ConcurrentMap<Class<?>, ObjectWriter> cache)
 	{
 		try
 		{
 			if (object == null) {
 				return "";
 			}
-			return  mapper.writeValueAsString(object);
+			return writerFor(object.getClass(), cache).writeValueAsString(object);
 		}
 		catch (JsonProcessingException e)
 		{
 			throw new SerializationException(e);
 		}
 	}
+
+	private void serialize(Object object, ByteBuf buffer, ConcurrentMap<Class<?>, ObjectWriter> cache)
+	{
+		if (object == null) return;
+
+		try
+		{
+			writerFor(object.getClass(), cache).writeValue((OutputStream) new ByteBufOutputStream(buffer), object);
+		}
+		catch (IOException e)
+		{
+			throw new SerializationException(e);
+		}
+	}
+
+	private ObjectReader readerFor(Class<?> type)
+	{
+		ObjectReader reader = readers.get(type);
+
+		if (reader == null)
+		{
+			reader = mapper.reader(type);
+			readers.putIfAbsent(type, reader);
+		}
+
+		return reader;
+	}
+
+	/**
+	 * @param cache either the writers or the unencodedWriters.
+	 */
+	private ObjectWriter writerFor(Class<?> type, ConcurrentMap<Class<?>, ObjectWriter> cache)
+	{
+		ObjectWriter writer = cache.get(type);
+
+		if (writer == null)
+		{
+			writer = mapper.writerWithType(type);
+
+			if (cache == unencodedWriters)
+			{
+				writer = writer.withAttribute(JacksonEncodingStringSerializer.SKIP_ENCODING, Boolean.TRUE);
+			}
+
+			cache.putIfAbsent(type, writer);
+		}
+
+		return writer;
+	}
+
+	private static boolean isBlank(String string)
+	{
+		for (int i = 0; i < string.length(); i++)
+		{
+			if (string.charAt(i) > ' ') return false;
+		}
+
+		return true;
+	}
 }
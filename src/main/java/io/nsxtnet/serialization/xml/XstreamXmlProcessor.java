@@ -21,12 +21,18 @@ import com.thoughtworks.xstream.XStream;
 import com.thoughtworks.xstream.converters.SingleValueConverter;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
 import io.nsxtnet.contenttype.ContentType;
 import io.nsxtnet.domain.JsendResultWrapper;
+import io.nsxtnet.serialization.ByteBufSerializer;
+import io.nsxtnet.serialization.SerializationException;
 import io.nsxtnet.util.Format;
 import io.nsxtnet.util.StringUtils;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -40,6 +46,7 @@ import java.util.Map;
  * @since Mar 16, 2010
  */
 public class XstreamXmlProcessor extends XmlSerializationProcessor
+implements ByteBufSerializer
 {
 	private static final byte[] EMPTY_STRING_BYTES = StringUtils.EMPTY_STRING.getBytes(ContentType.CHARSET);
 
@@ -97,6 +104,26 @@ public class XstreamXmlProcessor extends XmlSerializationProcessor
 		return xstream.toXML(object);
 	}
 
+	/**
+	 * Writes the XML through a writer over the buffer, in the response character set.
+	 */
+	@Override
+	public void serialize(Object object, ByteBuf buffer)
+	{
+		if (object == null) return;
+
+		try
+		{
+			Writer writer = new OutputStreamWriter(new ByteBufOutputStream(buffer), ContentType.CHARSET);
+			xstream.toXML(object, writer);
+			writer.flush();
+		}
+		catch (IOException e)
+		{
+			throw new SerializationException(e);
+		}
+	}
+
 	@Override
 	@SuppressWarnings("unchecked")
 	public <T> T deserialize(String xml, Class<T> type)
@@ -15,8 +15,9 @@
 */
 package io.nsxtnet.url;
 
+import java.net.URLDecoder;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -24,53 +25,237 @@ import java.util.Set;
 /**
  * Contains the results of a UrlPattern.match() call, reflecting the match outcome
  * and containing any parameter values, if applicable.
- * 
- * <p/>UrlMatch is immutable.
- * 
+ *
+ * <p/>A UrlMatch created by a matcher is a flyweight over the matched URL: it holds the
+ * parameter names and the start/end offsets of each value within the URL. Values are only
+ * cut out of the URL (and URL decoded) when they are asked for.
+ *
+ * <p/>UrlMatch is not immutable, but is safe to share between threads, as the matches of
+ * cached route resolutions are. The values are cut out and decoded into caches without
+ * synchronization: threads may race to fill them, but every thread computes the same
+ * (immutable) Strings, so a lost race only repeats that work.
+ *
  * @author toddf
  * @since Apr 29, 2010
  */
 public class UrlMatch
 {
+	private static final String ENCODING = "UTF-8";
+
+	/**
+	 * The URL the parameter offsets refer to. Null if the values were given directly.
+	 */
+	private final String url;
+
+	/**
+	 * Parameter names, in the order they appear in the URL pattern.
+	 */
+	private final String[] names;
+
+	/**
+	 * Start and end offsets (end exclusive) into the url of each parameter value.
+	 * A start offset of -1 denotes a parameter that did not participate in the match.
+	 */
+	private final int[] offsets;
+
 	/**
-	 * Parameter values parsed from the URL during the match.
+	 * Raw parameter values, cut out of the url on first access.
 	 */
-	private Map<String, String>parameters = new HashMap<String, String>();
+	private String[] values;
 
-	
-	// SECTION: CONSTRUCTOR
+	/**
+	 * URL-decoded parameter values, created on first access.
+	 */
+	private String[] decoded;
+
+
+	// SECTION: CONSTRUCTORS
 
 	public UrlMatch(Map<String, String> parameters)
 	{
 		super();
+		this.url = null;
+		this.offsets = null;
+
+		int size = (parameters == null ? 0 : parameters.size());
+		this.names = new String[size];
+		this.values = new String[size];
 
 		if (parameters != null)
 		{
-			this.parameters.putAll(parameters);
+			int i = 0;
+
+			for (Entry<String, String> entry : parameters.entrySet())
+			{
+				names[i] = entry.getKey();
+				values[i++] = entry.getValue();
+			}
 		}
 	}
 
-	
+	/**
+	 * Creates a UrlMatch over the given URL. The names and offsets arrays are owned by
+	 * the UrlMatch afterward and must not be modified by the caller.
+	 *
+	 * @param url the matched URL.
+	 * @param names the parameter names.
+	 * @param offsets start/end offset pairs into the url, one pair per name. A start of -1 denotes an absent value.
+	 */
+	public UrlMatch(String url, String[] names, int[] offsets)
+	{
+		super();
+		this.url = url;
+		this.names = names;
+		this.offsets = offsets;
+	}
+
+
 	// SECTION: ACCESSORS
 
 	/**
 	 * Retrieves a parameter value parsed from the URL during the match.
-	 * 
+	 *
 	 * @param name the name of a parameter for which to retrieve the value.
 	 * @return the parameter value from the URL, or null if not present.
 	 */
 	public String get(String name)
 	{
-		return parameters.get(name);
+		int index = indexOf(name);
+		return (index < 0 ? null : getValue(index));
 	}
-	
+
+	/**
+	 * Retrieves a URL-decoded parameter value parsed from the URL during the match.
+	 * If the value cannot be decoded, the raw value is returned.
+	 *
+	 * @param name the name of a parameter for which to retrieve the value.
+	 * @return the decoded parameter value from the URL, or null if not present.
+	 */
+	public String getDecoded(String name)
+	{
+		int index = indexOf(name);
+		return (index < 0 ? null : getDecodedValue(index));
+	}
+
+	/**
+	 * @return the number of parameter slots in this match, including those without a value.
+	 */
+	public int size()
+	{
+		return names.length;
+	}
+
+	public String getName(int index)
+	{
+		return names[index];
+	}
+
+	/**
+	 * @param index
+	 * @return the raw parameter value at the given index, or null if it did not participate in the match.
+	 */
+	public String getValue(int index)
+	{
+		// Read once, as another thread may replace the cache with one of its own.
+		String[] cache = values;
+
+		if (cache == null)
+		{
+			cache = new String[names.length];
+			values = cache;
+		}
+
+		String value = cache[index];
+
+		if (value == null && offsets != null && offsets[index << 1] >= 0)
+		{
+			value = url.substring(offsets[index << 1], offsets[(index << 1) + 1]);
+			cache[index] = value;
+		}
+
+		return value;
+	}
+
+	/**
+	 * @param index
+	 * @return the URL-decoded parameter value at the given index, or null if it did not participate in the match.
+	 */
+	public String getDecodedValue(int index)
+	{
+		String[] cache = decoded;
+
+		if (cache == null)
+		{
+			cache = new String[names.length];
+			decoded = cache;
+		}
+
+		String value = cache[index];
+
+		if (value == null)
+		{
+			value = decode(getValue(index));
+			cache[index] = value;
+		}
+
+		return value;
+	}
+
 	/**
 	 * Retrieves the parameter entries as a set.
-	 * 
+	 *
 	 * @return a Set of Map entries (by String, String).
 	 */
 	public Set<Entry<String, String>> parameterSet()
 	{
+		Map<String, String> parameters = new LinkedHashMap<String, String>();
+
+		for (int i = 0; i < names.length; i++)
+		{
+			String value = getValue(i);
+
+			if (value != null)
+			{
+				parameters.put(names[i], value);
+			}
+		}
+
 		return Collections.unmodifiableSet(parameters.entrySet());
 	}
+
+
+	// SECTION: UTILITY - PRIVATE
+
+	/**
+	 * Later parameters of the same name take precedence, as they would in a Map.
+	 */
+	private int indexOf(String name)
+	{
+		for (int i = names.length - 1; i >= 0; i--)
+		{
+			if (names[i].equals(name) && getValue(i) != null)
+			{
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	private static String decode(String value)
+	{
+		if (value == null || (value.indexOf('%') < 0 && value.indexOf('+') < 0))
+		{
+			return value;
+		}
+
+		try
+		{
+			return URLDecoder.decode(value, ENCODING);
+		}
+		catch (Exception e)
+		{
+			return value;
+		}
+	}
 }
@@ -15,6 +15,8 @@
  */
 package io.nsxtnet.url;
 
+import io.netty.util.concurrent.FastThreadLocal;
+
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -79,6 +81,26 @@ public class UrlPattern implements UrlMatcher
 	// Finds the query string portion within a URL. Appended to the end of the built-up regex string.
 	private static final String URL_QUERY_STRING_REGEX = "(?:\\?.*?)?$";
 
+	// Characters that make a literal portion of the pattern meaningful to the regex. Patterns containing any of
+	// these outside of their parameters are matched using the compiled regex.
+	private static final String REGEX_METACHARACTERS = "\\.[]{}()*+?^$|";
+
+	// Characters allowed in a parameter value, per URL_PARAM_MATCH_REGEX.
+	private static final boolean[] PARAMETER_CHARACTERS = characters("%-._~!$&'()*+,;=:[]@");
+
+	// Characters allowed in a format specifier, per URL_FORMAT_MATCH_REGEX.
+	private static final boolean[] FORMAT_CHARACTERS = characters("%_");
+
+	// Per-thread scratch space for parameter offsets, so that failed matches create no garbage.
+	private static final FastThreadLocal<int[]> OFFSETS = new FastThreadLocal<int[]>()
+	{
+		@Override
+		protected int[] initialValue()
+		{
+			return new int[16];
+		}
+	};
+
 	/**
 	 * The URL pattern describing the URL layout and any parameters.
 	 */
@@ -94,6 +116,23 @@ public class UrlPattern implements UrlMatcher
 	 */
 	private List<String> parameterNames = new ArrayList<String>();
 
+	/**
+	 * The parameter names as an array, shared by every UrlMatch created by this pattern.
+	 */
+	private String[] names;
+
+	/**
+	 * The literal portions of the pattern surrounding its (non-format) parameters. There is
+	 * always one more literal than there are parameters. Null if the pattern can only be
+	 * matched by the compiled regex.
+	 */
+	private String[] literals;
+
+	/**
+	 * True if the pattern ends in the optional '.{format}' specifier.
+	 */
+	private boolean hasFormat;
+
 	
 	// SECTION: CONSTRUCTOR
 
@@ -111,9 +150,9 @@ public class UrlPattern implements UrlMatcher
 	// SECTION: ACCESSORS/MUTATORS - PRIVATE
 
 	/**
-     * @return the pattern
+     * @return the pattern, including any '.{format}' suffix.
      */
-    private String getUrlPattern()
+    public String getUrlPattern()
     {
     	return urlPattern;
     }
@@ -150,11 +189,23 @@ public class UrlPattern implements UrlMatcher
 	@Override
     public UrlMatch match(String url)
 	{
-		Matcher matcher = compiledUrl.matcher(url);
+		if (literals == null)
+		{
+			Matcher matcher = compiledUrl.matcher(url);
+
+			if (matcher.matches())
+			{
+				return new UrlMatch(extractParameters(matcher));
+			}
 
-		if (matcher.matches())
+			return null;
+		}
+
+		int[] offsets = offsets();
+
+		if (matchLiteral(url, 0, 0, offsets))
 		{
-			return new UrlMatch(extractParameters(matcher));
+			return new UrlMatch(url, names, Arrays.copyOf(offsets, names.length << 1));
 		}
 
 		return null;
@@ -170,7 +221,135 @@ public class UrlPattern implements UrlMatcher
 	@Override
     public boolean matches(String url)
 	{
-		return (match(url) != null);
+		if (literals == null)
+		{
+			return compiledUrl.matcher(url).matches();
+		}
+
+		return matchLiteral(url, 0, 0, offsets());
+	}
+
+
+	// SECTION: MATCHING - PRIVATE
+
+	/**
+	 * Matches the literal at the given index, then the parameter following it (if any) and the
+	 * remainder of the pattern. Parameters are matched lazily, shortest value first, backtracking
+	 * the same way the compiled regex would.
+	 */
+	private boolean matchLiteral(String url, int index, int position, int[] offsets)
+	{
+		String literal = literals[index];
+
+		if (!url.startsWith(literal, position))
+		{
+			return false;
+		}
+
+		int start = position + literal.length();
+
+		if (index == literals.length - 1)
+		{
+			return matchEnd(url, start, offsets);
+		}
+
+		int length = url.length();
+
+		for (int end = start + 1; end <= length && isCharacter(PARAMETER_CHARACTERS, url.charAt(end - 1)); end++)
+		{
+			offsets[index << 1] = start;
+			offsets[(index << 1) + 1] = end;
+
+			if (matchLiteral(url, index + 1, end, offsets))
+			{
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Matches the optional format specifier and the end of the path, which is either the end of
+	 * the URL or the start of its query string.
+	 */
+	private boolean matchEnd(String url, int position, int[] offsets)
+	{
+		int length = url.length();
+
+		if (hasFormat)
+		{
+			int slot = (names.length - 1) << 1;
+
+			if (position < length && url.charAt(position) == '.')
+			{
+				int end = position + 1;
+
+				while (end < length && isCharacter(FORMAT_CHARACTERS, url.charAt(end)))
+				{
+					end++;
+				}
+
+				if (end > position + 1 && (end == length || url.charAt(end) == '?'))
+				{
+					offsets[slot] = position + 1;
+					offsets[slot + 1] = end;
+					return true;
+				}
+			}
+
+			offsets[slot] = -1;
+			offsets[slot + 1] = -1;
+		}
+
+		return (position == length || url.charAt(position) == '?');
+	}
+
+	private int[] offsets()
+	{
+		int[] offsets = OFFSETS.get();
+
+		if (offsets.length < names.length << 1)
+		{
+			offsets = new int[names.length << 1];
+			OFFSETS.set(offsets);
+		}
+
+		return offsets;
+	}
+
+	private static boolean isCharacter(boolean[] characters, char c)
+	{
+		return (c < characters.length && characters[c]);
+	}
+
+	/**
+	 * @param others non-word characters to allow in addition to [A-Za-z0-9_].
+	 * @return a lookup table of the allowed ASCII characters.
+	 */
+	private static boolean[] characters(String others)
+	{
+		boolean[] characters = new boolean[128];
+
+		for (char c = 'A'; c <= 'Z'; c++)
+		{
+			characters[c] = true;
+			characters[Character.toLowerCase(c)] = true;
+		}
+
+		for (char c = '0'; c <= '9'; c++)
+		{
+			characters[c] = true;
+		}
+
+		characters['_'] = true;
+
+		for (int i = 0; i < others.length(); i++)
+		{
+			characters[others.charAt(i)] = true;
+		}
+
+		return characters;
 	}
 	
 	
@@ -186,6 +365,43 @@ public class UrlPattern implements UrlMatcher
 		String parsedPattern = getUrlPattern().replaceFirst(URL_FORMAT_REGEX, URL_FORMAT_MATCH_REGEX);
 		parsedPattern = parsedPattern.replaceAll(URL_PARAM_REGEX, URL_PARAM_MATCH_REGEX);
 		this.compiledUrl = Pattern.compile(parsedPattern + URL_QUERY_STRING_REGEX);
+		this.names = parameterNames.toArray(new String[parameterNames.size()]);
+		tokenize();
+	}
+
+	/**
+	 * Splits the URL pattern string into the literals surrounding its parameters, for use by the
+	 * hand-written matcher. Leaves literals null if any literal would be interpreted by the regex.
+	 */
+	private void tokenize()
+	{
+		String pattern = getPattern();
+		this.hasFormat = !pattern.equals(getUrlPattern());
+		List<String> tokens = new ArrayList<String>();
+		Matcher m = URL_PARAM_PATTERN.matcher(pattern);
+		int start = 0;
+
+		while (m.find())
+		{
+			tokens.add(pattern.substring(start, m.start()));
+			start = m.end();
+		}
+
+		tokens.add(pattern.substring(start));
+
+		for (String token : tokens)
+		{
+			for (int i = 0; i < token.length(); i++)
+			{
+				if (REGEX_METACHARACTERS.indexOf(token.charAt(i)) >= 0)
+				{
+					this.literals = null;
+					return;
+				}
+			}
+		}
+
+		this.literals = tokens.toArray(new String[tokens.size()]);
 	}
 
 	/**
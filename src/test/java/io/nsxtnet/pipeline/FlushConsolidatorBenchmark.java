@@ -0,0 +1,267 @@
+/*
+ * Copyright 2014, Strategic Gains, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.nsxtnet.pipeline;
+
+import io.netty.handler.codec.http.HttpMethod;
+import io.nsxtnet.NSxtNet;
+import io.nsxtnet.http.Request;
+import io.nsxtnet.http.Response;
+import io.nsxtnet.serialization.DefaultSerializationProvider;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the flushes, and so write syscalls, per response with each response flushed on
+ * its own (as before the FlushConsolidator) and with flushes consolidated, under load from
+ * 64 keep-alive connections. Each connection pipelines batches of requests to a route
+ * processed on the executor threads, so their responses complete off the event loop.
+ *
+ * <p/>Not a unit test: run main() on an otherwise idle machine. The server's console log of
+ * each request is muted while measuring.
+ *
+ * @author kosh
+ * @since Jan 2, 2015
+ */
+public class FlushConsolidatorBenchmark
+{
+	private static final int PORT = 18100;
+	private static final int CONNECTIONS = 64;
+	private static final int BATCH_SIZE = 16;
+	private static final int WARMUP_MILLIS = 3000;
+	private static final int MEASURE_MILLIS = 5000;
+
+	private static final byte[] BATCH = createBatch();
+
+	public static void main(String[] args)
+	throws Exception
+	{
+		NSxtNet.setSerializationProvider(new DefaultSerializationProvider());
+		PrintStream console = System.out;
+
+		try
+		{
+			System.setOut(new PrintStream(NullOutputStream.INSTANCE));
+			Result unconsolidated = run(1);
+			Result consolidated = run(FlushConsolidator.DEFAULT_MAX_CONSOLIDATED_FLUSHES);
+			console.println("each flushed:  " + unconsolidated);
+			console.println("consolidated:  " + consolidated);
+		}
+		finally
+		{
+			System.setOut(console);
+		}
+	}
+
+	private static Result run(int maxConsolidatedFlushes)
+	throws Exception
+	{
+		NSxtNet server = new NSxtNet()
+			.setPort(PORT)
+			.setExecutorThreadCount(8)
+			.setMaxConsolidatedFlushes(maxConsolidatedFlushes);
+		server.uri("/hello", new HelloController())
+			.action("read", HttpMethod.GET)
+			.method(HttpMethod.GET)
+			.noSerialization();
+		server.bind();
+
+		try
+		{
+			List<Client> clients = new ArrayList<Client>(CONNECTIONS);
+
+			for (int i = 0; i < CONNECTIONS; i++)
+			{
+				Client client = new Client();
+				clients.add(client);
+				client.start();
+			}
+
+			Thread.sleep(WARMUP_MILLIS);
+			long responses = Client.RESPONSES.get();
+			long flushes = server.getFlushStatistics().getFlushCount();
+			Thread.sleep(MEASURE_MILLIS);
+			responses = Client.RESPONSES.get() - responses;
+			flushes = server.getFlushStatistics().getFlushCount() - flushes;
+
+			for (Client client : clients)
+			{
+				client.close();
+			}
+
+			return new Result(responses, flushes);
+		}
+		finally
+		{
+			server.shutdown();
+		}
+	}
+
+	private static byte[] createBatch()
+	{
+		StringBuilder batch = new StringBuilder();
+
+		for (int i = 0; i < BATCH_SIZE; i++)
+		{
+			batch.append("GET /hello HTTP/1.1\r\nHost: localhost\r\n\r\n");
+		}
+
+		return batch.toString().getBytes(StandardCharsets.US_ASCII);
+	}
+
+
+	// SECTION: INNER CLASSES
+
+	public static class HelloController
+	{
+		public Object read(Request request, Response response)
+		{
+			return "Hello, world!";
+		}
+	}
+
+	private static class Result
+	{
+		private final long responses;
+		private final long flushes;
+
+		public Result(long responses, long flushes)
+		{
+			super();
+			this.responses = responses;
+			this.flushes = flushes;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("%8d responses/s, %.3f flushes (write syscalls) per response",
+				responses * 1000L / MEASURE_MILLIS, (double) flushes / responses);
+		}
+	}
+
+	/**
+	 * A connection that sends a batch of pipelined requests, reads their responses, and
+	 * does so again until closed.
+	 */
+	private static class Client
+	extends Thread
+	{
+		private static final AtomicLong RESPONSES = new AtomicLong();
+
+		private volatile boolean isClosed = false;
+
+		public Client()
+		{
+			super("flush-benchmark-client");
+			setDaemon(true);
+		}
+
+		public void close()
+		throws InterruptedException
+		{
+			isClosed = true;
+			join();
+		}
+
+		@Override
+		public void run()
+		{
+			try (Socket socket = new Socket("127.0.0.1", PORT))
+			{
+				socket.setTcpNoDelay(true);
+				OutputStream out = socket.getOutputStream();
+				DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+				while (!isClosed)
+				{
+					out.write(BATCH);
+					out.flush();
+
+					for (int i = 0; i < BATCH_SIZE; i++)
+					{
+						readResponse(in);
+					}
+
+					RESPONSES.addAndGet(BATCH_SIZE);
+				}
+			}
+			catch (IOException e)
+			{
+				if (!isClosed) e.printStackTrace();
+			}
+		}
+
+		private void readResponse(DataInputStream in)
+		throws IOException
+		{
+			int contentLength = 0;
+			String line;
+
+			while (!(line = readLine(in)).isEmpty())
+			{
+				if (line.regionMatches(true, 0, "Content-Length:", 0, 15))
+				{
+					contentLength = Integer.parseInt(line.substring(15).trim());
+				}
+			}
+
+			in.readFully(new byte[contentLength]);
+		}
+
+		private String readLine(InputStream in)
+		throws IOException
+		{
+			StringBuilder line = new StringBuilder();
+			int c;
+
+			while ((c = in.read()) != '\n')
+			{
+				if (c < 0) throw new IOException("Connection closed");
+				if (c != '\r') line.append((char) c);
+			}
+
+			return line.toString();
+		}
+	}
+
+	private static class NullOutputStream
+	extends OutputStream
+	{
+		private static final NullOutputStream INSTANCE = new NullOutputStream();
+
+		@Override
+		public void write(int b)
+		{
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len)
+		{
+		}
+	}
+}
@@ -0,0 +1,158 @@
+/*
+    Copyright 2014, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+package io.nsxtnet.pipeline;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseEncoder;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.CharsetUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Checks that a request expecting 100-continue is answered as soon as its head arrives, once,
+ * with the handlers in the order PipelineInitializer adds them.
+ *
+ * @author kosh
+ * @since Jan 2, 2015
+ */
+public class RequestDecompressorTest
+	extends TestCase
+{
+	private static final int MAX_CONTENT_LENGTH = 1024;
+	private static final String BODY = "{\"name\":\"value\"}";
+
+	private EmbeddedChannel channel;
+
+	public RequestDecompressorTest(String testName)
+	{
+		super(testName);
+	}
+
+	public static Test suite()
+	{
+		return new TestSuite(RequestDecompressorTest.class);
+	}
+
+	@Override
+	protected void setUp()
+	{
+		channel = new EmbeddedChannel(new RequestDecompressor(MAX_CONTENT_LENGTH, null),
+			new HttpObjectAggregator(MAX_CONTENT_LENGTH), new HttpResponseEncoder());
+	}
+
+	@Override
+	protected void tearDown()
+	{
+		channel.finish();
+	}
+
+	public void testContinueWithoutContentEncoding()
+	{
+		byte[] body = BODY.getBytes(CharsetUtil.UTF_8);
+		assertContinued(newHead(body.length, null), body);
+	}
+
+	public void testContinueWithGzip()
+	throws Exception
+	{
+		byte[] body = gzip(BODY.getBytes(CharsetUtil.UTF_8));
+		assertContinued(newHead(body.length, "gzip"), body);
+	}
+
+	public void testNoContinueUnlessExpected()
+	{
+		byte[] body = BODY.getBytes(CharsetUtil.UTF_8);
+		HttpRequest head = newHead(body.length, null);
+		head.headers().remove(HttpHeaders.Names.EXPECT);
+		channel.writeInbound(head);
+		assertNull(channel.readOutbound());
+
+		channel.writeInbound(new DefaultLastHttpContent(Unpooled.wrappedBuffer(body)));
+		assertBody(channel.readInbound());
+	}
+
+	private void assertContinued(HttpRequest head, byte[] body)
+	{
+		channel.writeInbound(head);
+		Object response = channel.readOutbound();
+		assertTrue("100 Continue not sent after the head", response instanceof ByteBuf);
+		String status = ((ByteBuf) response).toString(CharsetUtil.US_ASCII);
+		((ByteBuf) response).release();
+		assertTrue(status, status.startsWith("HTTP/1.1 100 Continue\r\n"));
+		assertNull(channel.readInbound());
+
+		channel.writeInbound(new DefaultLastHttpContent(Unpooled.wrappedBuffer(body)));
+		assertNull("100 Continue sent twice", channel.readOutbound());
+		assertBody(channel.readInbound());
+	}
+
+	private static void assertBody(Object message)
+	{
+		assertTrue(message instanceof FullHttpRequest);
+		FullHttpRequest request = (FullHttpRequest) message;
+
+		try
+		{
+			assertTrue(request.getDecoderResult().isSuccess());
+			assertNull(request.headers().get(HttpHeaders.Names.EXPECT));
+			assertEquals(BODY, request.content().toString(CharsetUtil.UTF_8));
+		}
+		finally
+		{
+			request.release();
+		}
+	}
+
+	private static HttpRequest newHead(int contentLength, String contentEncoding)
+	{
+		HttpRequest head = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/things");
+		head.headers().set(HttpHeaders.Names.CONTENT_LENGTH, contentLength);
+		head.headers().set(HttpHeaders.Names.EXPECT, HttpHeaders.Values.CONTINUE);
+
+		if (contentEncoding != null)
+		{
+			head.headers().set(HttpHeaders.Names.CONTENT_ENCODING, contentEncoding);
+		}
+
+		return head;
+	}
+
+	private static byte[] gzip(byte[] bytes)
+	throws Exception
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GZIPOutputStream gzip = new GZIPOutputStream(out);
+		gzip.write(bytes);
+		gzip.close();
+		return out.toByteArray();
+	}
+}
@@ -0,0 +1,187 @@
+/*
+    Copyright 2014, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+package io.nsxtnet.serialization.json;
+
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.owasp.encoder.Encode;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+
+/**
+ * Checks that JacksonEncodingStringSerializer writes exactly what serializing the output of
+ * Encode.forXmlContent() writes, over a table of edge cases and over seeded random strings.
+ *
+ * @author kosh
+ * @since Jan 2, 2015
+ */
+public class JacksonEncodingStringSerializerTest
+	extends TestCase
+{
+	private static final long SEED = 20150102L;
+	private static final int RANDOM_STRINGS = 20000;
+
+	private static final String[] STRINGS =
+	{
+		"",
+		"plain ascii",
+		"&",
+		"<script>alert('x' & \"y\")</script>",
+		"a&&b<<c>>d",
+		"tab\tlf\ncr\r",
+		"\u0000\u0001\u0008\u000B\u000C\u000E\u001F",
+		"del\u007F",
+		"c1 \u0080\u0084\u0085\u0086\u009F\u00A0",
+		"nel\u0085only",
+		"lone high \uD800 end",
+		"lone low \uDC00 end",
+		"trailing high \uDBFF",
+		"\uDC00\uD800",
+		"\uD800\uD800\uDC00",
+		"pair \uD83D\uDE00 emoji",
+		"noncharacters \uFFFE \uFFFF \uFDD0 \uFDEF \uFDCF \uFDF0",
+		"plane 1 \uD83F\uDFFE \uD83F\uDFFF",
+		"plane 16 \uDBFF\uDFFE \uDBFF\uDFFF",
+		"\uD800\uDC00 first supplementary",
+		"bmp \u00E9\u4E2D\u200B\u2028\u2029\uFEFF\uFFFD",
+		"mixed <\uD83D\uDE00>&\u0085\uFFFF\uDC00",
+	};
+
+	// Characters random strings are mostly drawn from; the rest are drawn from all of UTF-16.
+	private static final char[] INTERESTING =
+	{
+		'a', 'Z', '0', ' ', '&', '<', '>', '"', '\'', '\\', '/', '\t', '\n', '\r', '\u0000', '\u001F',
+		'\u007F', '\u0080', '\u0085', '\u009F', '\u00A0', '\uD800', '\uDBFF', '\uDC00', '\uDFFF',
+		'\uD83F', '\uDFFE', '\uFDD0', '\uFDEF', '\uFFFD', '\uFFFE', '\uFFFF',
+	};
+
+	private ObjectMapper encoding;
+	private ObjectMapper plain;
+
+	public JacksonEncodingStringSerializerTest(String testName)
+	{
+		super(testName);
+	}
+
+	public static Test suite()
+	{
+		return new TestSuite(JacksonEncodingStringSerializerTest.class);
+	}
+
+	@Override
+	protected void setUp()
+	{
+		SimpleModule module = new SimpleModule();
+		module.addSerializer(String.class, new JacksonEncodingStringSerializer());
+		encoding = new ObjectMapper();
+		encoding.registerModule(module);
+		plain = new ObjectMapper();
+	}
+
+	public void testTable()
+	throws Exception
+	{
+		for (String value : STRINGS)
+		{
+			assertEncoded(value);
+		}
+	}
+
+	public void testSeededRandom()
+	throws Exception
+	{
+		Random random = new Random(SEED);
+
+		for (int i = 0; i < RANDOM_STRINGS; i++)
+		{
+			assertEncoded(randomString(random, random.nextInt(64)));
+		}
+	}
+
+	public void testLongerThanCachedBuffer()
+	throws Exception
+	{
+		Random random = new Random(SEED);
+		assertEncoded(randomString(random, 10000));
+		assertEncoded(randomString(random, 300));
+	}
+
+	public void testSkipEncoding()
+	throws Exception
+	{
+		String value = "<a>&\u0085\uDC00";
+		String json = encoding.writer()
+			.withAttribute(JacksonEncodingStringSerializer.SKIP_ENCODING, Boolean.TRUE)
+			.writeValueAsString(value);
+		assertEquals(plain.writeValueAsString(value), json);
+	}
+
+	private void assertEncoded(String value)
+	throws Exception
+	{
+		String expected = plain.writeValueAsString(Encode.forXmlContent(value));
+		assertEquals(describe(value), expected, encoding.writeValueAsString(value));
+	}
+
+	private static String randomString(Random random, int length)
+	{
+		StringBuilder sb = new StringBuilder(length);
+
+		for (int i = 0; i < length; i++)
+		{
+			if (random.nextInt(4) == 0)
+			{
+				sb.append((char) random.nextInt(0x10000));
+			}
+			else
+			{
+				sb.append(INTERESTING[random.nextInt(INTERESTING.length)]);
+			}
+		}
+
+		return sb.toString();
+	}
+
+	/**
+	 * @return the value with its non-printable-ASCII characters escaped, for failure messages.
+	 */
+	private static String describe(String value)
+	{
+		StringBuilder sb = new StringBuilder();
+
+		for (int i = 0; i < value.length(); i++)
+		{
+			char c = value.charAt(i);
+
+			if (c >= 0x20 && c < 0x7F)
+			{
+				sb.append(c);
+			}
+			else
+			{
+				sb.append(String.format("\\u%04X", (int) c));
+			}
+		}
+
+		return sb.toString();
+	}
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2014, Strategic Gains, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ *
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.nsxtnet.serialization.json;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.Unpooled;
+import io.nsxtnet.contenttype.ContentType;
+
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Compares parsing request bodies through a Reader over the buffer (as
+ * JacksonJsonProcessor used to) with parsing the buffer's bytes through a cached
+ * ObjectReader, for 1KB and 100KB bodies in heap and direct buffers.
+ *
+ * <p/>Not a unit test: run main() with a warmed-up, otherwise idle JVM. Results are
+ * nanoseconds per parse, lower is better.
+ *
+ * @author kosh
+ * @since Dec 24, 2014
+ */
+public class JacksonJsonProcessorBenchmark
+{
+	private static final int WARMUP_MILLIS = 3000;
+	private static final int MEASURE_MILLIS = 3000;
+
+	private static volatile Object sink;
+
+	public static void main(String[] args)
+	throws Exception
+	{
+		JacksonJsonProcessor processor = new JacksonJsonProcessor();
+		ObjectMapper mapper = new ObjectMapper();
+		processor.initializeMapper(mapper);
+
+		for (int size : new int[] {1024, 100 * 1024})
+		{
+			byte[] json = createJson(processor, size);
+
+			for (boolean isDirect : new boolean[] {false, true})
+			{
+				ByteBuf buffer = (isDirect ? Unpooled.directBuffer(json.length) : Unpooled.buffer(json.length));
+				buffer.writeBytes(json);
+				String label = String.format("%6d bytes, %-6s", json.length, (isDirect ? "direct" : "heap"));
+
+				System.out.println(label + " reader: " + run(new ReaderParse(mapper, buffer)) + " ns/op");
+				System.out.println(label + " bytes:  " + run(new ByteParse(processor, buffer)) + " ns/op");
+				buffer.release();
+			}
+		}
+	}
+
+	private static long run(Runnable parse)
+	{
+		measure(parse, WARMUP_MILLIS);
+		return measure(parse, MEASURE_MILLIS);
+	}
+
+	private static long measure(Runnable parse, int millis)
+	{
+		long start = System.nanoTime();
+		long end = start + millis * 1000000L;
+		long count = 0;
+		long now;
+
+		do
+		{
+			for (int i = 0; i < 100; i++)
+			{
+				parse.run();
+			}
+
+			count += 100;
+			now = System.nanoTime();
+		}
+		while (now < end);
+
+		return (now - start) / count;
+	}
+
+	private static byte[] createJson(JacksonJsonProcessor processor, int size)
+	{
+		Order order = new Order();
+		order.id = "order-12345";
+		order.items = new ArrayList<Item>();
+
+		while (processor.serialize(order).length() < size)
+		{
+			Item item = new Item();
+			item.sku = "SKU-" + order.items.size();
+			item.description = "An item with a reasonably long description, " + order.items.size();
+			item.quantity = order.items.size() % 7 + 1;
+			item.price = 19.99 + order.items.size();
+			order.items.add(item);
+		}
+
+		return processor.serialize(order).getBytes(ContentType.CHARSET);
+	}
+
+
+	// SECTION: INNER CLASSES
+
+	public static class Order
+	{
+		private String id;
+		private List<Item> items;
+	}
+
+	public static class Item
+	{
+		private String sku;
+		private String description;
+		private int quantity;
+		private double price;
+	}
+
+	private static class ReaderParse
+	implements Runnable
+	{
+		private final ObjectMapper mapper;
+		private final ByteBuf buffer;
+
+		public ReaderParse(ObjectMapper mapper, ByteBuf buffer)
+		{
+			super();
+			this.mapper = mapper;
+			this.buffer = buffer;
+		}
+
+		@Override
+		public void run()
+		{
+			try
+			{
+				sink = mapper.readValue(new InputStreamReader(new ByteBufInputStream(buffer.duplicate()), ContentType.CHARSET), Order.class);
+			}
+			catch (Exception e)
+			{
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	private static class ByteParse
+	implements Runnable
+	{
+		private final JacksonJsonProcessor processor;
+		private final ByteBuf buffer;
+
+		public ByteParse(JacksonJsonProcessor processor, ByteBuf buffer)
+		{
+			super();
+			this.processor = processor;
+			this.buffer = buffer;
+		}
+
+		@Override
+		public void run()
+		{
+			sink = processor.deserialize(buffer.duplicate(), Order.class);
+		}
+	}
+}
@@ -0,0 +1,210 @@
+/*
+    Copyright 2014, Strategic Gains, Inc.
+
+	Licensed under the Apache License, Version 2.0 (the "License");
+	you may not use this file except in compliance with the License.
+	You may obtain a copy of the License at
+
+		http://www.apache.org/licenses/LICENSE-2.0
+
+	Unless required by applicable law or agreed to in writing, software
+	distributed under the License is distributed on an "AS IS" BASIS,
+	WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+	See the License for the specific language governing permissions and
+	limitations under the License.
+ */
+
+package io.nsxtnet.url;
+
+import java.util.List;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Checks UrlPattern's hand-written matcher against the regex UrlPattern used to build for the
+ * same template, run through a UrlRegex. Every template is tried against every URL, so that
+ * each template sees near misses as well as matches.
+ *
+ * @author kosh
+ * @since Jan 2, 2015
+ */
+public class UrlPatternTest
+	extends TestCase
+{
+	// The regex translation UrlPattern performed before it matched without regex.
+	private static final String URL_PARAM_REGEX = "\\{(\\w*?)\\}";
+	private static final String URL_PARAM_MATCH_REGEX = "\\([%\\\\w-.\\\\~!\\$&'\\\\(\\\\)\\\\*\\\\+,;=:\\\\[\\\\]@]+?\\)";
+	private static final String URL_FORMAT_REGEX = "(?:\\.\\{format\\})$";
+	private static final String URL_FORMAT_MATCH_REGEX = "(?:\\\\.\\([\\\\w%]+?\\))?";
+	private static final String URL_QUERY_STRING_REGEX = "(?:\\?.*?)?$";
+
+	private static final String[] TEMPLATES =
+	{
+		"/",
+		"/api/search",
+		"/api/search/",
+		"/api/search.{format}",
+		"/api/search/users/{userid}",
+		"/api/search/users/{userid}/",
+		"/api/search/users/{userid}.{format}",
+		"/api/{version}/search/users/{userid}",
+		"/api/{version}/search/users/{userid}.{format}",
+		"/files/v{version}-{name}",
+		"/files/{name}-draft",
+		"/files/{name}.{format}",
+		"/files/{name}.bak",
+		"/{collection}/{id}:{action}",
+		"/{a}{b}",
+		"/api/v1.0/{id}",
+	};
+
+	private static final String[] URLS =
+	{
+		"",
+		"/",
+		"//",
+		"/?",
+		"/?x=1",
+		"/api/search",
+		"/api/search/",
+		"/api/search?q=a/b.json",
+		"/api/search/?q=1",
+		"/api/search.json",
+		"/api/search.json?q=1",
+		"/api/search.",
+		"/api/search.json/",
+		"/api/search.js.on",
+		"/api/search.%6Aso%6E",
+		"/api/search.json.xml",
+		"/api/search/users/todd",
+		"/api/search/users/todd/",
+		"/api/search/users/todd//",
+		"/api/search/users/todd.xml",
+		"/api/search/users/todd.xml?x=.json",
+		"/api/search/users/todd.smith.xml",
+		"/api/search/users/todd.smith",
+		"/api/search/users/todd.",
+		"/api/search/users/t%C3%B6dd",
+		"/api/search/users/t%20o%20d%20d.json",
+		"/api/search/users/%2F",
+		"/api/search/users/a@b:c;d=e,f+g*h(i)j'k&l$m!n~o_p-q",
+		"/api/search/users/[deprecated]",
+		"/api/search/users/t%C3%B6dd.x%6Dl",
+		"/api/search/users/todd#fragment",
+		"/api/search/users/to dd",
+		"/api/search/users/tödd",
+		"/api/v1/search/users/todd",
+		"/api/v1/search/users/todd.json",
+		"/api/v1/search/users/todd?format=xml",
+		"/api/v1.0/search/users/todd",
+		"/api//search/users/todd",
+		"/files/v2-readme",
+		"/files/v2-read-me",
+		"/files/v-readme",
+		"/files/v2-",
+		"/files/vv2-readme.txt",
+		"/files/readme-draft",
+		"/files/readme-draft-draft",
+		"/files/-draft",
+		"/files/readme.bak",
+		"/files/readme.bak.bak",
+		"/files/readme.txt.bak",
+		"/files/.bak",
+		"/files/readme.txt",
+		"/files/readme.tar.gz",
+		"/files/readme.txt?x=y",
+		"/blogs/42:publish",
+		"/blogs/42:publish:now",
+		"/blogs/42:",
+		"/blogs/:publish",
+		"/blogs/a:b:c?d",
+		"/ab",
+		"/a",
+		"/abc/",
+		"/api/v1.0/42",
+		"/api/v1x0/42",
+		"/api/v1/42",
+	};
+
+	public UrlPatternTest(String testName)
+	{
+		super(testName);
+	}
+
+	public static Test suite()
+	{
+		return new TestSuite(UrlPatternTest.class);
+	}
+
+	public void testMatchesRegex()
+	{
+		int matched = 0;
+
+		for (String template : TEMPLATES)
+		{
+			UrlPattern pattern = new UrlPattern(template);
+			UrlRegex regex = new UrlRegex(toRegex(template));
+			List<String> names = pattern.getParameterNames();
+
+			for (String url : URLS)
+			{
+				String message = template + " against '" + url + "'";
+				UrlMatch expected = regex.match(url);
+				UrlMatch actual = pattern.match(url);
+				assertEquals(message, expected != null, actual != null);
+				assertEquals(message, expected != null, pattern.matches(url));
+
+				if (expected == null)
+				{
+					continue;
+				}
+
+				matched++;
+
+				for (int i = 0; i < names.size(); i++)
+				{
+					assertEquals(message + ", " + names.get(i),
+						expected.get(UrlRegex.PARAMETER_PREFIX + i), actual.get(names.get(i)));
+				}
+			}
+		}
+
+		// Guards against a table that no longer exercises the matchers.
+		assertTrue(matched > TEMPLATES.length);
+	}
+
+	public void testParameterAdjacentToLiterals()
+	{
+		UrlMatch match = new UrlPattern("/files/v{version}-{name}.{format}").match("/files/v2-read-me.txt?v=3");
+		assertNotNull(match);
+		assertEquals("2", match.get("version"));
+		assertEquals("read-me", match.get("name"));
+		assertEquals("txt", match.get("format"));
+	}
+
+	public void testEncodedSegment()
+	{
+		UrlMatch match = new UrlPattern("/users/{userid}.{format}").match("/users/t%C3%B6dd%20s.json");
+		assertNotNull(match);
+		assertEquals("t%C3%B6dd%20s", match.get("userid"));
+		assertEquals("tödd s", match.getDecoded("userid"));
+		assertEquals("json", match.get("format"));
+	}
+
+	public void testMissingFormat()
+	{
+		UrlMatch match = new UrlPattern("/users/{userid}.{format}").match("/users/todd?format=json");
+		assertNotNull(match);
+		assertEquals("todd", match.get("userid"));
+		assertNull(match.get("format"));
+	}
+
+	private static String toRegex(String template)
+	{
+		String regex = template.replaceFirst(URL_FORMAT_REGEX, URL_FORMAT_MATCH_REGEX);
+		regex = regex.replaceAll(URL_PARAM_REGEX, URL_PARAM_MATCH_REGEX);
+		return regex + URL_QUERY_STRING_REGEX;
+	}
+}